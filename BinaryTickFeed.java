@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Supplier;
+
+/**
+ * 二进制行情源：从字节通道（如行情网关的TCP连接）读取BinaryTickFormat记录流，
+ * 在读取线程上用享元解码器直接写入接入接口；读缓冲区是预分配的直接内存，解码过程不创建对象
+ */
+public class BinaryTickFeed implements MarketDataFeed {
+    private final String name;
+    private final Supplier<ReadableByteChannel> channelFactory;
+    private final int bufferBytes;
+    private volatile ReadableByteChannel channel;
+    private volatile Thread reader;
+    private volatile boolean failed;                // 读取线程因读取失败或数据损坏退出
+
+    public BinaryTickFeed(String name, Supplier<ReadableByteChannel> channelFactory) {
+        this(name, channelFactory, 64 * 1024);
+    }
+
+    /**
+     * @param channelFactory 打开行情通道，每次start调用一次
+     * @param bufferBytes    读缓冲区大小，向下取整为记录长度的整数倍
+     */
+    public BinaryTickFeed(String name, Supplier<ReadableByteChannel> channelFactory, int bufferBytes) {
+        if (bufferBytes < BinaryTickFormat.RECORD_BYTES) {
+            throw new IllegalArgumentException("Buffer smaller than one binary tick: " + bufferBytes);
+        }
+        this.name = name;
+        this.channelFactory = channelFactory;
+        this.bufferBytes = bufferBytes - bufferBytes % BinaryTickFormat.RECORD_BYTES;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized void start(MarketDataSink sink) {
+        if (reader != null) {
+            throw new IllegalStateException("Feed already started: " + name);
+        }
+        channel = channelFactory.get();
+        failed = false;
+        reader = new Thread(() -> read(channel, sink), "feed-reader-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void read(ReadableByteChannel channel, MarketDataSink sink) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferBytes).order(BinaryTickFormat.BYTE_ORDER);
+        TickDecoder decoder = new TickDecoder();
+        long streamOffset = 0;                      // 缓冲区开头对应的流偏移
+        try {
+            while (channel.read(buffer) >= 0) {
+                // 解码已到达的完整记录，不完整的记录移到缓冲区开头等待后续字节
+                decoder.wrap(buffer, 0, buffer.position()).decodeTo(sink);
+                int consumed = decoder.consumedTo();
+                buffer.limit(buffer.position());
+                buffer.position(consumed);
+                buffer.compact();
+                streamOffset += consumed;
+            }
+            System.out.println("Market data feed " + name + " reached end of stream");
+        } catch (IOException e) {
+            if (reader != null) {
+                failed = true;
+                System.err.println("Market data feed " + name + " failed at stream offset " + streamOffset + ": "
+                    + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            // 记录损坏（如证券代码长度非法）或下游异常：之后的数据无法再按记录对齐，停止读取
+            failed = true;
+            System.err.println("Market data feed " + name + " stopped on bad record at stream offset "
+                + (streamOffset + Math.max(0, decoder.offset())) + ": " + e);
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * 读取线程是否因读取失败或数据损坏而退出，此时需要stop后重新start
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    private void closeQuietly(ReadableByteChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing market data feed " + name + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread current = reader;
+        if (current == null) {
+            return;
+        }
+        reader = null;
+        try {
+            // 关闭通道使阻塞的读取返回
+            channel.close();
+            current.join(5000);
+        } catch (IOException e) {
+            System.err.println("Error closing market data feed " + name + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
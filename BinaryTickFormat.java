@@ -0,0 +1,28 @@
+import java.nio.ByteOrder;
+
+/**
+ * 二进制行情tick格式：定长48字节记录，小端字节序，多条记录首尾相接
+ *
+ *  偏移  长度  字段
+ *   0     8    更新时间(毫秒时间戳)
+ *   8     8    价格(double)
+ *  16     8    数量(double)
+ *  24     1    数据类型(MDEntryType，ASCII)
+ *  25     1    证券代码长度
+ *  26    22    证券代码(ASCII，不足补0)
+ */
+public final class BinaryTickFormat {
+    public static final int RECORD_BYTES = 48;
+    public static final int MAX_SYMBOL_LENGTH = 22;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final int UPDATE_TIME_OFFSET = 0;
+    static final int PRICE_OFFSET = 8;
+    static final int SIZE_OFFSET = 16;
+    static final int ENTRY_TYPE_OFFSET = 24;
+    static final int SYMBOL_LENGTH_OFFSET = 25;
+    static final int SYMBOL_OFFSET = 26;
+
+    private BinaryTickFormat() {
+    }
+}
@@ -0,0 +1,97 @@
+import quickfix.Message;
+import quickfix.field.NoMDEntries;
+
+/**
+ * 行情推送等级：每秒消息数和字节数上限，以及合并窗口
+ * 合并窗口内同一条目的多次变动合并为最新值推送，与订阅自身的更新间隔取较大者
+ * 各项为0表示不限制
+ */
+public class DeliveryTier {
+    // 不限速、不合并，未配置等级的会话使用
+    public static final DeliveryTier UNLIMITED = new DeliveryTier("unlimited", 0, 0, 0);
+
+    // 按字节限速时的消息大小估算：消息头尾的固定开销，条目组见MarketDataEntry.estimateGroupBytes
+    static final int MESSAGE_OVERHEAD_BYTES = 128;
+
+    private final String name;
+    private final long messagesPerSecond;
+    private final long bytesPerSecond;
+    private final long conflationWindowMillis;
+
+    public DeliveryTier(String name, long messagesPerSecond, long bytesPerSecond, long conflationWindowMillis) {
+        if (messagesPerSecond < 0 || bytesPerSecond < 0 || conflationWindowMillis < 0) {
+            throw new IllegalArgumentException("Invalid delivery tier " + name + ": limits must not be negative");
+        }
+        this.name = name;
+        this.messagesPerSecond = messagesPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.conflationWindowMillis = conflationWindowMillis;
+    }
+
+    /**
+     * 解析等级定义，格式为 name:messagesPerSecond:bytesPerSecond:conflationWindowMillis
+     */
+    public static DeliveryTier parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        if (parts.length != 4 || parts[0].isEmpty()) {
+            throw new IllegalArgumentException("Invalid delivery tier, expected name:msgs:bytes:windowMillis: " + spec);
+        }
+        try {
+            return new DeliveryTier(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                Long.parseLong(parts[3]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid delivery tier limits: " + spec);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getConflationWindowMillis() {
+        return conflationWindowMillis;
+    }
+
+    /**
+     * 是否限制推送速率
+     */
+    public boolean isRateLimited() {
+        return messagesPerSecond > 0 || bytesPerSecond > 0;
+    }
+
+    /**
+     * 创建消息数令牌桶，不限制时返回null
+     */
+    TokenBucket newMessageBucket() {
+        return messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond) : null;
+    }
+
+    /**
+     * 创建字节数令牌桶，不限制时返回null
+     */
+    TokenBucket newByteBucket() {
+        return bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond) : null;
+    }
+
+    /**
+     * 估算已构建消息的编码长度，按条目组数计算，不序列化消息
+     */
+    static long estimateBytes(Message message) {
+        return MESSAGE_OVERHEAD_BYTES
+            + (long) message.getGroupCount(NoMDEntries.FIELD) * MarketDataEntry.ESTIMATED_GROUP_BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(msgs/s=" + messagesPerSecond + ", bytes/s=" + bytesPerSecond
+            + ", window=" + conflationWindowMillis + "ms)";
+    }
+}
@@ -0,0 +1,94 @@
+import quickfix.SessionID;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 推送等级配置：等级定义以及会话/用户到等级的分配
+ * 会话登录时先按完整SessionID查找，再按对方的TargetCompID（用户）查找，都未分配时使用默认等级
+ *
+ * 系统属性：
+ *   marketdata.tiers         等级定义，逗号分隔，如 premium:0:0:0,retail:50:65536:500
+ *   marketdata.tiers.assign  分配，逗号分隔，如 CLIENT1=premium,FIX.4.4:MDS->CLIENT2=retail
+ *   marketdata.tiers.default 默认等级名，未配置时不限速
+ */
+public class DeliveryTiers {
+    private final Map<String, DeliveryTier> tiers = new ConcurrentHashMap<>();
+    // SessionID字符串或TargetCompID到等级名的映射
+    private final Map<String, String> assignments = new ConcurrentHashMap<>();
+    private volatile DeliveryTier defaultTier = DeliveryTier.UNLIMITED;
+
+    public DeliveryTiers() {
+        tiers.put(DeliveryTier.UNLIMITED.getName(), DeliveryTier.UNLIMITED);
+    }
+
+    /**
+     * 从系统属性加载等级配置
+     */
+    public static DeliveryTiers fromSystemProperties() {
+        DeliveryTiers config = new DeliveryTiers();
+        String definitions = System.getProperty("marketdata.tiers");
+        if (definitions != null) {
+            for (String spec : definitions.split(",")) {
+                if (!spec.trim().isEmpty()) {
+                    config.addTier(DeliveryTier.parse(spec));
+                }
+            }
+        }
+        String assign = System.getProperty("marketdata.tiers.assign");
+        if (assign != null) {
+            for (String entry : assign.split(",")) {
+                // SessionID字符串中不含'='，按最后一个'='拆分
+                int separator = entry.lastIndexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Invalid tier assignment, expected key=tier: " + entry);
+                }
+                config.assign(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            }
+        }
+        String defaultName = System.getProperty("marketdata.tiers.default");
+        if (defaultName != null) {
+            config.setDefaultTier(defaultName.trim());
+        }
+        return config;
+    }
+
+    public void addTier(DeliveryTier tier) {
+        tiers.put(tier.getName(), tier);
+    }
+
+    public DeliveryTier getTier(String name) {
+        return tiers.get(name);
+    }
+
+    /**
+     * 将会话(SessionID字符串)或用户(TargetCompID)分配到指定等级，只影响之后登录的会话
+     */
+    public void assign(String sessionOrUser, String tierName) {
+        requireTier(tierName);
+        assignments.put(sessionOrUser, tierName);
+    }
+
+    public void setDefaultTier(String tierName) {
+        this.defaultTier = requireTier(tierName);
+    }
+
+    /**
+     * 查找会话的推送等级：会话分配优先于用户分配，都没有时返回默认等级
+     */
+    public DeliveryTier tierFor(SessionID sessionId) {
+        String tierName = assignments.get(sessionId.toString());
+        if (tierName == null) {
+            tierName = assignments.get(sessionId.getTargetCompID());
+        }
+        DeliveryTier tier = tierName != null ? tiers.get(tierName) : null;
+        return tier != null ? tier : defaultTier;
+    }
+
+    private DeliveryTier requireTier(String tierName) {
+        DeliveryTier tier = tiers.get(tierName);
+        if (tier == null) {
+            throw new IllegalArgumentException("Unknown delivery tier: " + tierName);
+        }
+        return tier;
+    }
+}
@@ -0,0 +1,61 @@
+import quickfix.SessionID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订阅权限配置：会话/用户允许订阅的证券类别
+ * 会话登录时先按完整SessionID查找，再按对方的TargetCompID（用户）查找，都未配置时不限制
+ *
+ * 系统属性：
+ *   marketdata.entitlements  逗号分隔，类别之间用'|'分隔，如 CLIENT1=STOCK|FUTURES,FIX.4.4:MDS->CLIENT2=FOREX
+ */
+public class Entitlements {
+    // SessionID字符串或TargetCompID到允许类别的映射
+    private final Map<String, Set<String>> grants = new ConcurrentHashMap<>();
+
+    /**
+     * 从系统属性加载权限配置
+     */
+    public static Entitlements fromSystemProperties() {
+        Entitlements config = new Entitlements();
+        String spec = System.getProperty("marketdata.entitlements");
+        if (spec != null) {
+            for (String entry : spec.split(",")) {
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+                // SessionID字符串中不含'='，按最后一个'='拆分
+                int separator = entry.lastIndexOf('=');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("Invalid entitlement, expected key=class|class: " + entry);
+                }
+                Set<String> symbolClasses = new HashSet<>();
+                for (String symbolClass : entry.substring(separator + 1).split("\\|")) {
+                    if (!symbolClass.trim().isEmpty()) {
+                        symbolClasses.add(symbolClass.trim());
+                    }
+                }
+                config.grant(entry.substring(0, separator).trim(), symbolClasses);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 设置会话(SessionID字符串)或用户(TargetCompID)允许订阅的类别，只影响之后登录的会话
+     */
+    public void grant(String sessionOrUser, Set<String> symbolClasses) {
+        grants.put(sessionOrUser, Collections.unmodifiableSet(new HashSet<>(symbolClasses)));
+    }
+
+    /**
+     * 查找会话允许订阅的类别：会话配置优先于用户配置，都没有时返回null表示不限制
+     */
+    public Set<String> entitlementsFor(SessionID sessionId) {
+        Set<String> symbolClasses = grants.get(sessionId.toString());
+        if (symbolClasses == null) {
+            symbolClasses = grants.get(sessionId.getTargetCompID());
+        }
+        return symbolClasses;
+    }
+}
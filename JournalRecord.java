@@ -0,0 +1,72 @@
+import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import java.util.Date;
+
+/**
+ * 行情日志记录，一条已分发的市场数据变动及其证券序号
+ */
+public class JournalRecord {
+    private final String symbol;
+    private final long sequence;            // 证券内序号，从1开始连续递增
+    private final char entryType;
+    private final char updateAction;        // NEW/CHANGE/DELETE
+    private final double price;
+    private final double size;
+    private final long updateTime;
+
+    public JournalRecord(String symbol, long sequence, char entryType, char updateAction,
+                         double price, double size, long updateTime) {
+        this.symbol = symbol;
+        this.sequence = sequence;
+        this.entryType = entryType;
+        this.updateAction = updateAction;
+        this.price = price;
+        this.size = size;
+        this.updateTime = updateTime;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public char getEntryType() {
+        return entryType;
+    }
+
+    public char getUpdateAction() {
+        return updateAction;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * 构建补发使用的增量刷新(35=X)条目组，RptSeq为证券内序号
+     */
+    public MarketDataIncrementalRefresh.NoMDEntries toIncrementalGroup() {
+        MarketDataIncrementalRefresh.NoMDEntries group = new MarketDataIncrementalRefresh.NoMDEntries();
+        group.set(new MDUpdateAction(updateAction));
+        group.set(new MDEntryType(entryType));
+        group.set(new Symbol(symbol));
+        if (updateAction != MDUpdateAction.DELETE) {
+            group.set(new MDEntryPrice(price));
+            group.set(new MDEntrySize(size));
+            group.set(new MDEntryTime(new Date(updateTime)));
+        }
+        group.set(new RptSeq((int) sequence));
+        return group;
+    }
+}
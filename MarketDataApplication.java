@@ -3,6 +3,15 @@ import quickfix.field.*;
 import quickfix.fix44.MarketDataRequest;
 import quickfix.fix44.MarketDataRequestReject;
 import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -10,14 +19,176 @@ import java.util.concurrent.ConcurrentHashMap;
  * FIX应用层实现，处理市场数据订阅和取消订阅请求
  */
 public class MarketDataApplication implements Application {
+    // 自定义字段：订阅更新间隔(毫秒)，支持100ms、250ms等亚秒级频率
+    static final int UPDATE_INTERVAL_MILLIS_TAG = 9001;
+    // 自定义字段：客户端已收到的某证券最后序号(RptSeq)，单证券增量订阅携带时从行情日志补发之后的变动代替初始快照
+    static final int REPLAY_FROM_SEQUENCE_TAG = 9002;
+
     private final MarketDataSubscriptionManager subscriptionManager;
     private final MarketDataProvider dataProvider;
+    private final SymbolRegistry symbolRegistry;
+    private final MarketDataCache marketDataCache;
+    private final OrderBookService orderBookService;
+    private final MarketDataSnapshotCache snapshotCache;
+    private final MarketDataSnapshotGenerator snapshotGenerator;
     private final MarketDataDistributor distributor;
+    private final MarketDataMetrics metrics;
+    private final MarketDataIngestor ingestor;
+    // 会话/用户的推送等级
+    private final DeliveryTiers deliveryTiers;
+    // 会话/用户允许订阅的证券类别
+    private final Entitlements entitlements;
+    private boolean stopped;
 
     public MarketDataApplication() {
-        this.subscriptionManager = new MarketDataSubscriptionManager();
+        // 分发分片数，默认与CPU核数一致
+        this(Integer.getInteger("marketdata.distributor.shards", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public MarketDataApplication(int distributorShards) {
+        this.subscriptionManager = new MarketDataSubscriptionManager(distributorShards);
         this.dataProvider = new MarketDataProvider();
-        this.distributor = new MarketDataDistributor(subscriptionManager, dataProvider);
+        this.symbolRegistry = new SymbolRegistry();
+        this.marketDataCache = new MarketDataCache(symbolRegistry, openJournal());
+        // 数据源提供的证券类别和交易所(marketdata.provider.instrumentType/exchange)，
+        // 用于按类别订阅、权限过滤和按类别统计；未配置时证券归入默认类别
+        String providerInstrumentType = System.getProperty("marketdata.provider.instrumentType");
+        String providerExchange = System.getProperty("marketdata.provider.exchange");
+        // 启动时从数据源加载一次全市场数据，此后快照只读缓存；初始数据与之后的推送按同一配置分类
+        List<MarketData> initialData = dataProvider.getAllMarketData();
+        for (MarketData data : initialData) {
+            symbolRegistry.classify(data.getSymbol(), providerInstrumentType, providerExchange);
+        }
+        marketDataCache.updateAll(initialData);
+        this.orderBookService = new OrderBookService(symbolRegistry);
+        // 行情源经接入管道推送的档位更新由缓存转交订单簿
+        marketDataCache.setOrderBookService(orderBookService);
+        this.snapshotCache = new MarketDataSnapshotCache(marketDataCache);
+        // 快照消息按字节预算切分，默认16KB
+        this.snapshotGenerator = new MarketDataSnapshotGenerator(snapshotCache, orderBookService,
+            marketDataCache.getJournal(), 4,
+            Runtime.getRuntime().availableProcessors(),
+            Integer.getInteger("marketdata.snapshot.chunkBytes", MarketDataSnapshotGenerator.DEFAULT_MAX_CHUNK_BYTES));
+        // 行情源推送到各自的环形缓冲区，由多个接入线程并行写入缓存并给新证券分类；旧的轮询行情源经轮询适配器接入
+        // 配置了采集目录(marketdata.capture.dir)时，每个行情源由其接入线程采集到自己的文件
+        String captureDirectory = System.getProperty("marketdata.capture.dir");
+        this.ingestor = new MarketDataIngestor(marketDataCache, symbolRegistry,
+            MarketDataIngestor.DEFAULT_RING_CAPACITY, Integer.getInteger("marketdata.ingest.threads", 2),
+            captureDirectory != null ? Paths.get(captureDirectory) : null);
+        ingestor.addFeed(new PollingMarketDataFeed("provider", dataProvider,
+            Long.getLong("marketdata.provider.pollMillis", 10), providerInstrumentType, providerExchange));
+        // 配置了回放文件(marketdata.replay.file)时，回放驱动作为行情源经同一接入管道写入，倍速由marketdata.replay.speed指定
+        String replayFile = System.getProperty("marketdata.replay.file");
+        if (replayFile != null) {
+            addReplayFeeds(Paths.get(replayFile), Double.parseDouble(System.getProperty("marketdata.replay.speed", "1")));
+        }
+        this.metrics = new MarketDataMetrics();
+        this.deliveryTiers = DeliveryTiers.fromSystemProperties();
+        this.entitlements = Entitlements.fromSystemProperties();
+        this.distributor = new MarketDataDistributor(subscriptionManager, null, marketDataCache,
+            marketDataCache, orderBookService, 10, metrics);
+        // 快照消息与增量推送共用会话推送等级的令牌
+        snapshotGenerator.setSessionRegistry(distributor.getSessionRegistry());
+        registerMetrics(metrics);
+        // 进程退出时停止服务，采集缓冲区和行情日志写入磁盘
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "market-data-shutdown"));
+    }
+
+    /**
+     * 停止行情服务，按依赖顺序关闭：先停止行情源并接入缓冲区中剩余的行情，再停止分发和快照，
+     * 最后关闭采集文件和行情日志，确保已接入的行情都写入磁盘；重复调用无效果
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        ingestor.shutdown();
+        distributor.shutdown();
+        snapshotGenerator.shutdown();
+        MarketDataJournal journal = marketDataCache.getJournal();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close market data journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 将分发指标注册为JMX MBean，注册失败不影响行情服务
+     */
+    private static void registerMetrics(MarketDataMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName(MarketDataMetrics.OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to register market data metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 打开行情日志，未配置日志目录(marketdata.journal.dir)时不记录
+     */
+    private static MarketDataJournal openJournal() {
+        String directory = System.getProperty("marketdata.journal.dir");
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return new MarketDataJournal(Paths.get(directory));
+        } catch (IOException e) {
+            System.err.println("Failed to open market data journal " + directory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 回放采集文件；为采集目录时其中每个行情源的采集文件作为单独的行情源回放，保持各行情源各自的顺序
+     */
+    private void addReplayFeeds(Path replayPath, double speed) {
+        if (!Files.isDirectory(replayPath)) {
+            ingestor.addFeed(new TickReplayDriver(replayPath, speed));
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(replayPath, "*.tick")) {
+            for (Path file : files) {
+                ingestor.addFeed(new TickReplayDriver(file, speed));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to open replay directory " + replayPath + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 行情接入接口（接入管道的下游）；外部行情源和回放驱动应经addFeed接入，以经过环形缓冲区和接入线程
+     */
+    public MarketDataSink getMarketDataSink() {
+        return marketDataCache;
+    }
+
+    /**
+     * 接入推送式行情源
+     */
+    public void addFeed(MarketDataFeed feed) {
+        ingestor.addFeed(feed);
+    }
+
+    /**
+     * 深度行情服务，深度行情源通过它更新订单簿档位
+     */
+    public OrderBookService getOrderBookService() {
+        return orderBookService;
+    }
+
+    /**
+     * 分发指标，同时注册在JMX(marketdata:type=MarketDataMetrics)
+     */
+    public MarketDataMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
@@ -26,13 +197,19 @@ public class MarketDataApplication implements Application {
     @Override
     public void onLogon(SessionID sessionId) {
         System.out.println("Client logged on: " + sessionId);
+        // 登记会话上下文，此后该会话的订阅通过上下文直接访问会话句柄和出站队列，按会话或用户分配推送等级和订阅权限
+        DeliveryTier tier = deliveryTiers.tierFor(sessionId);
+        SessionContext context = distributor.openSession(sessionId, tier);
+        context.setEntitlements(entitlements.entitlementsFor(sessionId));
+        System.out.println("Delivery tier for " + sessionId + ": " + tier
+            + (context.isRestricted() ? ", entitled to " + context.getEntitlements() : ""));
     }
 
     @Override
     public void onLogout(SessionID sessionId) {
         System.out.println("Client logged out: " + sessionId);
-        // 自动取消该会话的所有订阅
-        subscriptionManager.removeAllSubscriptions(sessionId);
+        // 关闭会话上下文，一次性取消该会话的所有订阅并释放出站队列
+        distributor.removeSession(sessionId);
     }
 
     @Override
@@ -57,6 +234,10 @@ public class MarketDataApplication implements Application {
     private void handleMarketDataRequest(MarketDataRequest request, SessionID sessionId) throws FieldNotFound {
         String reqId = request.getMDReqID().getValue();
         char requestType = request.getSubscriptionRequestType().getValue();
+        SessionContext context = distributor.getSessionRegistry().get(sessionId);
+        if (context != null) {
+            context.recordRequest();
+        }
 
         switch (requestType) {
             case SubscriptionRequestType.SNAPSHOT:
@@ -80,8 +261,9 @@ public class MarketDataApplication implements Application {
         try {
             // 解析请求的证券列表和数据类型
             MarketDataRequestParams params = parseRequestParams(request);
-            // 生成并发送快照数据
-            MarketDataSnapshotGenerator.sendSnapshot(sessionId, reqId, params, dataProvider);
+            checkEntitlements(sessionId, params);
+            // 快照异步生成并发送，FIX回调线程不等待
+            submitSnapshot(sessionId, reqId, params);
         } catch (Exception e) {
             sendReject(sessionId, reqId, "Failed to generate snapshot: " + e.getMessage());
         }
@@ -93,21 +275,43 @@ public class MarketDataApplication implements Application {
     private void handleSubscribeRequest(MarketDataRequest request, SessionID sessionId, String reqId) throws FieldNotFound {
         try {
             MarketDataRequestParams params = parseRequestParams(request);
+            // 只能订阅已注册的证券，未知代码直接拒绝，客户端无法借请求让注册表无限增长
+            int[] symbolIds = symbolRegistry.idsOf(params.getSymbols());
+            SessionContext context = distributor.getSessionRegistry().get(sessionId);
+            checkEntitlements(context, params);
             
             // 创建新订阅
             Subscription subscription = new Subscription(
+                reqId,
                 sessionId,
-                params.getSymbols(),
+                symbolIds,
+                params.getSymbolPrefixes(),
+                params.getSymbolClasses(),
                 params.getEntryTypes(),
-                params.getUpdateFrequency(),
+                params.getUpdateIntervalMillis(),
+                params.getUpdateType(),
+                params.getMarketDepth(),
                 System.currentTimeMillis()
             );
             
-            // 保存订阅
+            // 绑定会话上下文后保存订阅；先登记订阅再生成快照，快照发送完成之前的变动留在订阅中，之后再推送
+            if (context != null) {
+                subscription.bindSession(context);
+            }
+            subscription.holdUntilSnapshotSent();
             subscriptionManager.addSubscription(reqId, subscription);
             
-            // 立即发送初始快照
-            MarketDataSnapshotGenerator.sendSnapshot(sessionId, reqId, params, dataProvider);
+            // 提交初始快照，由快照线程异步发送；发送失败时移除订阅，不再推送没有快照作为基准的增量
+            // 快照完成时带回订单簿快照的版本，订阅丢弃快照已包含的档位变动后再恢复推送
+            snapshotGenerator.submit(sessionId, reqId, params).whenComplete((bookVersions, error) -> {
+                if (error == null) {
+                    subscription.snapshotSent(bookVersions);
+                    return;
+                }
+                subscriptionManager.removeSubscription(reqId, subscription);
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                sendReject(sessionId, reqId, "Failed to generate snapshot: " + cause.getMessage());
+            });
             
             System.out.println("Created subscription: " + reqId + " for session: " + sessionId);
         } catch (Exception e) {
@@ -136,23 +340,124 @@ public class MarketDataApplication implements Application {
         }
     }
 
+    private void checkEntitlements(SessionID sessionId, MarketDataRequestParams params) {
+        checkEntitlements(distributor.getSessionRegistry().get(sessionId), params);
+    }
+
+    /**
+     * 检查会话是否有权订阅请求的证券，会话限制了证券类别时，全市场和前缀模式请求无法确认范围，一律拒绝
+     */
+    private void checkEntitlements(SessionContext context, MarketDataRequestParams params) {
+        if (context == null || !context.isRestricted()) {
+            return;
+        }
+        if (params.isAllSymbols() || !params.getSymbolPrefixes().isEmpty()) {
+            throw new IllegalArgumentException("Session is entitled to " + context.getEntitlements() + " only");
+        }
+        for (String symbolClass : params.getSymbolClasses()) {
+            if (!context.isEntitled(symbolClass)) {
+                throw new IllegalArgumentException("Not entitled to " + symbolClass);
+            }
+        }
+        for (String symbol : params.getSymbols()) {
+            String symbolClass = symbolRegistry.symbolClassOf(symbolRegistry.idOf(symbol));
+            if (!context.isEntitled(symbolClass)) {
+                throw new IllegalArgumentException("Not entitled to " + symbol + " (" + symbolClass + ")");
+            }
+        }
+    }
+
     /**
      * 解析请求参数
      */
     private MarketDataRequestParams parseRequestParams(MarketDataRequest request) throws FieldNotFound {
-        // 解析证券列表（0表示全市场）
+        // 解析证券列表（0个或*/ALL表示全市场），EUR/*表示前缀模式，只带SecurityType表示该类别的所有证券
         int noRelatedSym = request.getNoRelatedSym().getValue();
+        List<String> symbols = new ArrayList<>(noRelatedSym);
+        List<String> symbolPrefixes = new ArrayList<>();
+        List<String> symbolClasses = new ArrayList<>();
+        boolean wholeMarket = false;
+        MarketDataRequest.NoRelatedSym symbolGroup = new MarketDataRequest.NoRelatedSym();
+        for (int i = 1; i <= noRelatedSym; i++) {
+            request.getGroup(i, symbolGroup);
+            String symbol = symbolGroup.isSetSymbol() ? symbolGroup.getSymbol().getValue() : null;
+            if (symbolGroup.isSetSecurityType() && (symbol == null || "*".equals(symbol) || "[N/A]".equals(symbol))) {
+                symbolClasses.add(symbolGroup.getSecurityType().getValue());
+            } else if (symbol == null) {
+                throw new IllegalArgumentException("NoRelatedSym entry " + i + " has neither Symbol nor SecurityType");
+            } else if (symbol.isEmpty()) {
+                throw new IllegalArgumentException("NoRelatedSym entry " + i + " has an empty Symbol");
+            } else if ("*".equals(symbol) || "ALL".equals(symbol)) {
+                wholeMarket = true;
+            } else if (symbol.indexOf('*') == symbol.length() - 1) {
+                symbolPrefixes.add(symbol.substring(0, symbol.length() - 1));
+            } else if (symbol.indexOf('*') >= 0) {
+                throw new IllegalArgumentException("Only a trailing * is supported in symbol patterns: " + symbol);
+            } else {
+                symbols.add(symbol);
+            }
+        }
+        if (wholeMarket) {
+            symbols.clear();
+            symbolPrefixes.clear();
+            symbolClasses.clear();
+        }
         
         // 解析数据类型
         int noMDEntryTypes = request.getNoMDEntryTypes().getValue();
+        List<Character> entryTypes = new ArrayList<>(noMDEntryTypes);
+        MarketDataRequest.NoMDEntryTypes entryTypeGroup = new MarketDataRequest.NoMDEntryTypes();
+        for (int i = 1; i <= noMDEntryTypes; i++) {
+            request.getGroup(i, entryTypeGroup);
+            entryTypes.add(entryTypeGroup.getMDEntryType().getValue());
+        }
+        
+        // 解析更新方式(MDUpdateType)，默认全量刷新
+        int updateType = MDUpdateType.FULL_REFRESH;
+        if (request.isSetMDUpdateType()) {
+            updateType = request.getMDUpdateType().getValue();
+            if (updateType != MDUpdateType.FULL_REFRESH && updateType != MDUpdateType.INCREMENTAL_REFRESH) {
+                throw new IllegalArgumentException("Unsupported MDUpdateType: " + updateType);
+            }
+        }
         
-        // 解析更新频率（如果有）
-        int updateFreq = 1; // 默认1秒
+        // 解析行情深度(MarketDepth)：0表示全部档位，1表示最优价，N表示前N档，默认最优价
+        int marketDepth = 1;
         if (request.isSetMarketDepth()) {
-            updateFreq = request.getMarketDepth().getValue();
+            marketDepth = request.getMarketDepth().getValue();
+            if (marketDepth < 0 || marketDepth > OrderBook.MAX_MARKET_DEPTH) {
+                throw new IllegalArgumentException("Unsupported MarketDepth: " + marketDepth);
+            }
+        }
+        
+        // 解析更新间隔：使用自定义毫秒字段，未指定时全量刷新默认1秒，增量刷新有变动即推送
+        long updateIntervalMillis = updateType == MDUpdateType.INCREMENTAL_REFRESH ? 0 : 1000;
+        if (request.isSetField(UPDATE_INTERVAL_MILLIS_TAG)) {
+            updateIntervalMillis = request.getInt(UPDATE_INTERVAL_MILLIS_TAG);
+        }
+        if (updateIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid update interval: " + updateIntervalMillis);
+        }
+        
+        // 解析补发起点：RptSeq按证券编号，补发只支持单个证券
+        long replayFromSequence = -1;
+        if (request.isSetField(REPLAY_FROM_SEQUENCE_TAG)) {
+            String value = request.getString(REPLAY_FROM_SEQUENCE_TAG);
+            try {
+                replayFromSequence = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid replay sequence: " + value);
+            }
+            if (replayFromSequence < 0) {
+                throw new IllegalArgumentException("Invalid replay sequence: " + replayFromSequence);
+            }
+            if (symbols.size() != 1 || !symbolPrefixes.isEmpty() || !symbolClasses.isEmpty()) {
+                throw new IllegalArgumentException("Replay requires exactly one Symbol");
+            }
         }
         
-        return new MarketDataRequestParams(noRelatedSym, noMDEntryTypes, updateFreq);
+        return new MarketDataRequestParams(symbols, symbolPrefixes, symbolClasses, entryTypes, updateIntervalMillis,
+            updateType, marketDepth, replayFromSequence);
     }
 
     /**
@@ -165,6 +470,18 @@ public class MarketDataApplication implements Application {
         Session.sendToTarget(confirm, sessionId);
     }
 
+    /**
+     * 提交快照请求，发送失败时回复拒绝消息
+     */
+    private void submitSnapshot(SessionID sessionId, String reqId, MarketDataRequestParams params) {
+        snapshotGenerator.submit(sessionId, reqId, params).whenComplete((result, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                sendReject(sessionId, reqId, "Failed to generate snapshot: " + cause.getMessage());
+            }
+        });
+    }
+
     /**
      * 发送请求拒绝消息
      */
@@ -174,7 +491,13 @@ public class MarketDataApplication implements Application {
             reject.set(new MDReqID(reqId));
             reject.set(new MDReqRejReason(MDReqRejReason.UNKNOWN_SYMBOL));
             reject.set(new Text(reason));
-            Session.sendToTarget(reject, sessionId);
+            SessionContext context = distributor.getSessionRegistry().get(sessionId);
+            if (context != null) {
+                context.recordReject();
+                context.send(reject);
+            } else {
+                Session.sendToTarget(reject, sessionId);
+            }
         } catch (Exception e) {
             System.err.println("Failed to send reject: " + e.getMessage());
         }
@@ -0,0 +1,239 @@
+import quickfix.field.MDUpdateAction;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 市场数据最新值缓存，按证券和数据类型保存当前状态，并记录自上次分发以来发生变动的条目
+ */
+public class MarketDataCache implements MarketDataSink {
+    private final SymbolRegistry symbolRegistry;
+    // 行情日志，为null时不记录
+    private final MarketDataJournal journal;
+    // 证券代码 -> (数据类型 -> 最新值)，同一条目的新值直接覆盖旧值
+    private final Map<String, Map<Character, MarketDataEntry>> latestBySymbol = new ConcurrentHashMap<>();
+    // 脏集合：证券代码 -> (数据类型 -> 自上次分发以来合并后的变动)
+    private final Map<String, Map<Character, MarketDataChange>> dirtyEntries = new ConcurrentHashMap<>();
+    // 深度行情服务，接入的档位更新写入其订单簿；为null时忽略档位更新
+    private volatile OrderBookService orderBookService;
+    // 数据版本号，每次写入(批量写入算一次)后递增，用于判断快照是否过期
+    private final AtomicLong version = new AtomicLong();
+
+    public MarketDataCache() {
+        this(new SymbolRegistry());
+    }
+
+    public MarketDataCache(SymbolRegistry symbolRegistry) {
+        this(symbolRegistry, null);
+    }
+
+    /**
+     * @param journal 行情日志，每个分发周期取出的变动按顺序写入并编号
+     */
+    public MarketDataCache(SymbolRegistry symbolRegistry, MarketDataJournal journal) {
+        this.symbolRegistry = symbolRegistry;
+        this.journal = journal;
+    }
+
+    /**
+     * 写入一条市场数据，覆盖同一证券同一类型的旧值并标记为已变动
+     */
+    public void update(MarketData data) {
+        onMarketData(data.getSymbol(), data.getEntryType(), data.getPrice(), data.getSize(),
+            data.getUpdateTime().getTime());
+    }
+
+    /**
+     * 写入一条归一化的行情，覆盖同一证券同一类型的旧值并标记为已变动
+     */
+    @Override
+    public void onMarketData(String symbol, char entryType, double price, double size, long updateTime) {
+        apply(symbol, entryType, price, size, updateTime);
+        version.incrementAndGet();
+    }
+
+    /**
+     * 比较、覆盖和标记变动在同一证券的compute中完成：多个接入线程写入同一证券时，
+     * 最新值与脏集合中的变动一致，更新时间早于当前值的行情被丢弃，不会覆盖较新的值
+     */
+    private void apply(String symbol, char entryType, double price, double size, long updateTime) {
+        MarketDataEntry entry = new MarketDataEntry(symbol, symbolRegistry.intern(symbol), entryType, price, size, updateTime);
+        latestBySymbol.compute(symbol, (key, latest) -> {
+            if (latest == null) {
+                latest = new ConcurrentHashMap<>();
+            }
+            MarketDataEntry previous = latest.get(entryType);
+            if (previous != null && updateTime < previous.getUpdateTime()) {
+                return latest;
+            }
+            latest.put(entryType, entry);
+            markDirty(new MarketDataChange(entry, previous == null ? MDUpdateAction.NEW : MDUpdateAction.CHANGE));
+            return latest;
+        });
+    }
+
+    @Override
+    public void onMarketDataDelete(String symbol, char entryType, long updateTime) {
+        remove(symbol, entryType);
+    }
+
+    /**
+     * 设置深度行情服务，之后接入的档位更新写入订单簿，由分发器推送给深度订阅者
+     */
+    public void setOrderBookService(OrderBookService orderBookService) {
+        this.orderBookService = orderBookService;
+    }
+
+    /**
+     * 档位更新不进入最新值缓存，转交深度行情服务更新订单簿
+     */
+    @Override
+    public void onLevelUpdate(String symbol, char side, double price, double size, long updateTime) {
+        OrderBookService books = orderBookService;
+        if (books != null) {
+            books.applyLevelUpdate(symbol, side, price, size, updateTime);
+        }
+    }
+
+    /**
+     * 删除指定证券指定类型的条目（如证券停牌、报价撤销），订阅者将收到DELETE
+     */
+    public void remove(String symbol, char entryType) {
+        boolean[] removed = new boolean[1];
+        latestBySymbol.computeIfPresent(symbol, (key, latest) -> {
+            MarketDataEntry entry = latest.remove(entryType);
+            if (entry != null) {
+                markDirty(new MarketDataChange(entry, MDUpdateAction.DELETE));
+                removed[0] = true;
+            }
+            return latest;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 批量写入市场数据，突发行情中同一条目的多次变动只保留最后一次
+     */
+    public void updateAll(Collection<MarketData> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        for (MarketData data : updates) {
+            apply(data.getSymbol(), data.getEntryType(), data.getPrice(), data.getSize(),
+                data.getUpdateTime().getTime());
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * 批量写入，整批只递增一次版本号
+     */
+    @Override
+    public void onMarketDataBatch(Collection<MarketData> batch) {
+        updateAll(batch);
+    }
+
+    /**
+     * 当前数据版本号，写入完成后才递增，读到某版本号后取得的数据不会早于该版本
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 取出并清空自上次调用以来变动过的条目，每个条目只返回合并后的最新变动
+     */
+    public List<MarketDataChange> drainChanged() {
+        List<MarketDataChange> changed = new ArrayList<>();
+        for (String symbol : dirtyEntries.keySet()) {
+            Map<Character, MarketDataChange> changes = dirtyEntries.remove(symbol);
+            if (changes != null) {
+                changed.addAll(changes.values());
+            }
+        }
+        if (journal != null) {
+            appendToJournal(changed);
+        }
+        return changed;
+    }
+
+    /**
+     * 将本周期的变动整批写入行情日志，证券序号记录在条目上，推送的增量条目组携带该序号(RptSeq)
+     * 日志写入失败不影响分发，只是该变动无法补发
+     */
+    private void appendToJournal(List<MarketDataChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            journal.appendAll(changes);
+        } catch (IOException e) {
+            System.err.println("Failed to journal market data: " + e.getMessage());
+        }
+    }
+
+    public MarketDataJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 获取指定证券指定类型的最新值
+     */
+    public MarketDataEntry get(String symbol, char entryType) {
+        Map<Character, MarketDataEntry> latest = latestBySymbol.get(symbol);
+        return latest != null ? latest.get(entryType) : null;
+    }
+
+    /**
+     * 获取全市场的最新条目（含已构建的FIX条目组）
+     */
+    public List<MarketDataEntry> getAllEntries() {
+        List<MarketDataEntry> result = new ArrayList<>();
+        for (Map<Character, MarketDataEntry> latest : latestBySymbol.values()) {
+            result.addAll(latest.values());
+        }
+        return result;
+    }
+
+    /**
+     * 获取指定证券列表的最新条目（含已构建的FIX条目组）
+     */
+    public List<MarketDataEntry> getEntriesBySymbols(Collection<String> symbols) {
+        List<MarketDataEntry> result = new ArrayList<>();
+        for (String symbol : symbols) {
+            Map<Character, MarketDataEntry> latest = latestBySymbol.get(symbol);
+            if (latest != null) {
+                result.addAll(latest.values());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 记录条目变动，同一周期内的多次变动合并为一次
+     */
+    private void markDirty(MarketDataChange change) {
+        MarketDataEntry entry = change.getEntry();
+        dirtyEntries.compute(entry.getSymbol(), (key, changes) -> {
+            if (changes == null) {
+                changes = new HashMap<>();
+            }
+            changes.merge(entry.getEntryType(), change, MarketDataChange::merge);
+            return changes;
+        });
+    }
+
+    public SymbolRegistry getSymbolRegistry() {
+        return symbolRegistry;
+    }
+
+    /**
+     * 缓存中的证券数量
+     */
+    public int size() {
+        return latestBySymbol.size();
+    }
+}
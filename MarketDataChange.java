@@ -0,0 +1,57 @@
+import quickfix.field.MDUpdateAction;
+
+/**
+ * 市场数据变动，记录条目的最新值及其相对上次分发的变动方式(MDUpdateAction)
+ */
+public class MarketDataChange {
+    private final MarketDataEntry entry;    // 条目最新值，删除时为被删除前的最后一个值
+    private final char updateAction;        // NEW/CHANGE/DELETE
+    private final long firstReceivedNanos;  // 合并前最早一次变动写入缓存的时刻，用于统计行情到发出的延迟
+
+    public MarketDataChange(MarketDataEntry entry, char updateAction) {
+        this(entry, updateAction, entry.getReceivedNanos());
+    }
+
+    private MarketDataChange(MarketDataEntry entry, char updateAction, long firstReceivedNanos) {
+        this.entry = entry;
+        this.updateAction = updateAction;
+        this.firstReceivedNanos = firstReceivedNanos;
+    }
+
+    public MarketDataEntry getEntry() {
+        return entry;
+    }
+
+    public char getUpdateAction() {
+        return updateAction;
+    }
+
+    /**
+     * 合并进该变动的各次变动中最早写入缓存的时刻，被合并的变动越多，越早于条目最新值的写入时刻
+     */
+    public long getFirstReceivedNanos() {
+        return firstReceivedNanos;
+    }
+
+    public boolean isDelete() {
+        return updateAction == MDUpdateAction.DELETE;
+    }
+
+    /**
+     * 合并同一条目在一个分发周期内的连续变动，保留最早一次变动的写入时刻
+     */
+    public MarketDataChange merge(MarketDataChange next) {
+        if (next.updateAction == MDUpdateAction.DELETE) {
+            return new MarketDataChange(next.entry, MDUpdateAction.DELETE, firstReceivedNanos);
+        }
+        if (updateAction == MDUpdateAction.NEW) {
+            // 新增后又变动，对订阅者而言仍是新增
+            return new MarketDataChange(next.entry, MDUpdateAction.NEW, firstReceivedNanos);
+        }
+        if (updateAction == MDUpdateAction.DELETE) {
+            // 删除后又重新出现，订阅者持有旧条目，按变动处理
+            return new MarketDataChange(next.entry, MDUpdateAction.CHANGE, firstReceivedNanos);
+        }
+        return new MarketDataChange(next.entry, next.updateAction, firstReceivedNanos);
+    }
+}
@@ -1,21 +1,106 @@
+import quickfix.Message;
 import quickfix.Session;
 import quickfix.SessionID;
+import quickfix.SessionNotFound;
+import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 市场数据分发器，负责将实时数据推送给所有订阅者
+ * 会话按订阅管理器的分片规则划分到多个分片线程，每个周期各分片并行处理自己的订阅者
  */
 public class MarketDataDistributor {
     private final MarketDataSubscriptionManager subscriptionManager;
     private final MarketDataProvider dataProvider;
+    private final MarketDataCache marketDataCache;
+    // 行情接入接口，行情源的更新经由它写入缓存（可在其中插入采集等处理）
+    private final MarketDataSink ingestSink;
+    // 深度行情服务，档位变动推送给订阅了多档深度的订阅者
+    private final OrderBookService orderBookService;
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // 分片线程，每个分片单线程处理，同一会话的订阅状态只会被所属分片访问
+    private final ExecutorService[] shardExecutors;
+    // 每个分片一个时间轮，按订阅的更新间隔调度推送
+    private final SubscriptionTimerWheel[] shardTimerWheels;
+    // 每个会话一个有界出站队列，由发送线程池负责实际发送
+    private final OutboundDispatcher outboundDispatcher;
+    private final long distributionIntervalMillis;
+    // 分发各阶段的延迟和计数指标
+    private final MarketDataMetrics metrics;
+    // 当前登录的会话，由onLogon/onLogout维护
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
     
-    public MarketDataDistributor(MarketDataSubscriptionManager manager, MarketDataProvider provider) {
+    public MarketDataDistributor(MarketDataSubscriptionManager manager, MarketDataProvider provider,
+                                 MarketDataCache cache) {
+        this(manager, provider, cache, 10);
+    }
+    
+    /**
+     * @param distributionIntervalMillis 分发周期(毫秒)，同时也是时间轮精度，决定支持的最小更新间隔
+     */
+    public MarketDataDistributor(MarketDataSubscriptionManager manager, MarketDataProvider provider,
+                                 MarketDataCache cache, long distributionIntervalMillis) {
+        this(manager, provider, cache, new OrderBookService(cache.getSymbolRegistry()), distributionIntervalMillis);
+    }
+    
+    public MarketDataDistributor(MarketDataSubscriptionManager manager, MarketDataProvider provider,
+                                 MarketDataCache cache, OrderBookService orderBookService,
+                                 long distributionIntervalMillis) {
+        this(manager, provider, cache, cache, orderBookService, distributionIntervalMillis);
+    }
+    
+    public MarketDataDistributor(MarketDataSubscriptionManager manager, MarketDataProvider provider,
+                                 MarketDataCache cache, MarketDataSink ingestSink, OrderBookService orderBookService,
+                                 long distributionIntervalMillis) {
+        this(manager, provider, cache, ingestSink, orderBookService, distributionIntervalMillis,
+            new MarketDataMetrics());
+    }
+    
+    /**
+     * @param provider         每个周期轮询的行情源，为null时不轮询（行情由MarketDataIngestor推送写入缓存）
+     * @param ingestSink       轮询得到的行情的接入接口，最终须写入cache
+     * @param orderBookService 深度行情服务，提供订单簿档位变动
+     * @param metrics          分发指标
+     */
+    public MarketDataDistributor(MarketDataSubscriptionManager manager, MarketDataProvider provider,
+                                 MarketDataCache cache, MarketDataSink ingestSink, OrderBookService orderBookService,
+                                 long distributionIntervalMillis, MarketDataMetrics metrics) {
         this.subscriptionManager = manager;
         this.dataProvider = provider;
+        this.marketDataCache = cache;
+        this.ingestSink = ingestSink;
+        this.orderBookService = orderBookService;
+        this.distributionIntervalMillis = distributionIntervalMillis;
+        
+        // 分片数与订阅管理器保持一致
+        int shardCount = manager.getShardCount();
+        this.shardExecutors = new ExecutorService[shardCount];
+        this.shardTimerWheels = new SubscriptionTimerWheel[shardCount];
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < shardCount; i++) {
+            shardExecutors[i] = Executors.newSingleThreadExecutor();
+            shardTimerWheels[i] = new SubscriptionTimerWheel(distributionIntervalMillis, 512, startTime);
+        }
+        int senderThreads = Math.max(4, shardCount);
+        // 队列容量和慢消费者阈值见OutboundDispatcher的marketdata.outbound.*配置项
+        this.outboundDispatcher = new OutboundDispatcher(this::sendBatch, senderThreads);
+        // 分发器停用队列（会话找不到、慢消费者断开）时同时关闭会话上下文和订阅，三者生命周期一致
+        outboundDispatcher.setRetiredListener(this::onQueueRetired);
+        // 出站队列溢出时积压的档位变动同样折叠为订单簿快照，队列长度与证券数而不是变动数成正比
+        outboundDispatcher.setLevelChangeCollapser(this::collapseQueuedLevelChanges);
+        this.metrics = metrics;
+        metrics.setOutboundDispatcher(outboundDispatcher);
         startDistributionService();
     }
     
@@ -23,80 +108,553 @@ public class MarketDataDistributor {
      * 启动数据分发服务
      */
     private void startDistributionService() {
-        // 每秒检查一次数据更新并推送给订阅者
-        executor.scheduleAtFixedRate(this::distributeUpdates, 0, 1, TimeUnit.SECONDS);
+        // 按分发周期检查数据更新并推送给订阅者
+        executor.scheduleAtFixedRate(this::distributeUpdates, 0, distributionIntervalMillis, TimeUnit.MILLISECONDS);
     }
     
     /**
      * 分发市场数据更新
      */
     private void distributeUpdates() {
+        long cycleStart = System.nanoTime();
         try {
-            // 获取最新市场数据更新
-            List<MarketData> updates = dataProvider.getLatestUpdates();
-            if (updates.isEmpty()) {
-                return;
+            // 轮询模式：将最新市场数据经接入接口写入缓存，同一条目的多次变动在缓存中合并
+            // 推送模式下行情已由MarketDataIngestor写入缓存
+            if (dataProvider != null) {
+                ingestSink.onMarketDataBatch(dataProvider.getLatestUpdates());
             }
             
-            // 遍历所有活跃订阅，推送更新
-            for (Subscription subscription : subscriptionManager.getAllActiveSubscriptions()) {
-                // 检查是否到了更新时间
-                if (!subscription.needsUpdate()) {
-                    continue;
-                }
-                
-                SessionID sessionId = subscription.getSessionId();
-                Session session = Session.lookupSession(sessionId);
-                
-                // 检查会话是否活跃
-                if (session == null || !session.isLoggedOn()) {
-                    subscriptionManager.removeAllSubscriptions(sessionId);
-                    continue;
+            // 每个变动条目只推送其最新值；即使没有新变动，各分片也要推进时间轮处理到期订阅
+            List<MarketDataChange> updates = marketDataCache.drainChanged();
+            List<OrderBookLevelChange> levelChanges = orderBookService.drainLevelChanges();
+            long now = System.currentTimeMillis();
+            
+            // 各分片并行处理自己的订阅者，全部完成后才进入下一个周期，保证周期之间的顺序
+            CompletableFuture<?>[] shardTasks = new CompletableFuture<?>[shardExecutors.length];
+            for (int shard = 0; shard < shardExecutors.length; shard++) {
+                final int shardId = shard;
+                shardTasks[shard] = CompletableFuture.runAsync(
+                    () -> distributeToShard(shardId, updates, levelChanges, now), shardExecutors[shard]);
+            }
+            CompletableFuture.allOf(shardTasks).join();
+            metrics.recordCycle(updates, marketDataCache.getSymbolRegistry(), cycleStart, System.nanoTime());
+            
+            outboundDispatcher.checkSlowConsumers();
+        } catch (Exception e) {
+            System.err.println("Error distributing market data updates: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 在分片线程上处理本周期的更新：变动累积到订阅者的待推送集合，再推送时间轮中到期的订阅
+     */
+    private void distributeToShard(int shard, List<MarketDataChange> updates,
+                                   List<OrderBookLevelChange> levelChanges, long now) {
+        try {
+            SubscriptionTimerWheel timerWheel = shardTimerWheels[shard];
+            SubscriptionIndex index = subscriptionManager.getShardIndex(shard);
+            Collection<Subscription> wholeMarketSubscribers = index.getWholeMarketSubscribers();
+            SymbolRegistry symbolRegistry = marketDataCache.getSymbolRegistry();
+            // 模式订阅的匹配结果，每个变动复用
+            Set<Subscription> patternSubscribers = new LinkedHashSet<>();
+            
+            // 通过证券倒排索引找到订阅者，开销与变动证券数 × 其实际订阅者数成正比
+            for (MarketDataChange change : updates) {
+                MarketDataEntry entry = change.getEntry();
+                addPendingChange(timerWheel, index.getSymbolSubscribers(entry.getSymbolId()), change, now);
+                addPendingChange(timerWheel, wholeMarketSubscribers, change, now);
+                if (index.hasPatternSubscribers()) {
+                    index.collectPatternSubscribers(entry.getSymbol(), entry.getSymbolId(),
+                        symbolRegistry.symbolClassOf(entry.getSymbolId()), patternSubscribers);
+                    addPendingChange(timerWheel, patternSubscribers, change, now);
+                    patternSubscribers.clear();
                 }
-                
-                // 生成并发送符合订阅条件的更新
-                MarketDataSnapshotFullRefresh updateMessage = createUpdateMessage(subscription, updates);
-                if (updateMessage != null) {
-                    Session.sendToTarget(updateMessage, sessionId);
-                    subscription.setLastUpdateTime(System.currentTimeMillis());
+            }
+            // 档位变动按发生顺序累积到深度订阅者
+            for (OrderBookLevelChange change : levelChanges) {
+                addPendingLevelChange(timerWheel, index.getSymbolSubscribers(change.getSymbolId()), change, now);
+                addPendingLevelChange(timerWheel, wholeMarketSubscribers, change, now);
+                if (index.hasPatternSubscribers()) {
+                    index.collectPatternSubscribers(change.getSymbol(), change.getSymbolId(),
+                        symbolRegistry.symbolClassOf(change.getSymbolId()), patternSubscribers);
+                    addPendingLevelChange(timerWheel, patternSubscribers, change, now);
+                    patternSubscribers.clear();
                 }
             }
+            
+            // 只处理到期的订阅，工作量与实际到期的订阅数成正比
+            timerWheel.advance(now, subscription -> flushSubscription(timerWheel, subscription, now));
         } catch (Exception e) {
-            System.err.println("Error distributing market data updates: " + e.getMessage());
+            System.err.println("Error distributing market data updates on shard " + shard + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 将变动累积到订阅者，尚未调度的订阅按其下次到期时间放入时间轮
+     */
+    private void addPendingChange(SubscriptionTimerWheel timerWheel, Collection<Subscription> subscribers,
+                                  MarketDataChange change, long now) {
+        char entryType = change.getEntry().getEntryType();
+        // 有订单簿的证券，深度订阅的买卖价由档位变动推送；没有档位行情源时仍推送缓存的最优价
+        boolean bookedSide = OrderBook.isBookSide(entryType) && hasOrderBook(change.getEntry().getSymbol());
+        for (Subscription subscription : subscribers) {
+            if (!subscription.isSubscribedToType(entryType)) {
+                continue;
+            }
+            if (bookedSide && subscription.isDepthOfBook()) {
+                continue;
+            }
+            subscription.addPendingChange(change);
+            schedule(timerWheel, subscription, now);
+        }
+    }
+    
+    /**
+     * 将档位变动累积到深度订阅者，只保留订阅档位数以内可见的变动
+     */
+    private void addPendingLevelChange(SubscriptionTimerWheel timerWheel, Collection<Subscription> subscribers,
+                                       OrderBookLevelChange change, long now) {
+        for (Subscription subscription : subscribers) {
+            if (!subscription.isDepthOfBook() || !subscription.isSubscribedToType(change.getSide())) {
+                continue;
+            }
+            if (subscription.addPendingLevelChange(change)) {
+                if (subscription.isLevelChangeLimitExceeded()) {
+                    collapseLevelChanges(subscription);
+                }
+                schedule(timerWheel, subscription, now);
+            }
+        }
+    }
+    
+    private boolean hasOrderBook(String symbol) {
+        return orderBookService != null && orderBookService.getBook(symbol) != null;
+    }
+    
+    /**
+     * 增量深度订阅积压的档位变动超过上限（推送被限速或客户端消费慢）时，
+     * 将其折叠为每个证券一条前N档快照，积压量与订阅的证券数而不是变动数成正比
+     */
+    private void collapseLevelChanges(Subscription subscription) {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (OrderBookLevelChange change : subscription.drainPendingLevelChanges()) {
+            symbols.add(change.getSymbol());
+        }
+        subscription.replacePendingLevelChanges(toBookRefreshes(subscription, symbols));
+    }
+    
+    /**
+     * 出站队列中一个订阅积压的档位变动过多时折叠，在入队的分片线程上执行（会话的所有订阅属于同一分片）：
+     * 增量订阅将队列中和订阅中尚未取出的档位变动一并折叠为每个证券一条订单簿快照，快照之后才发生的变动照常推送，
+     * 之前的迟到变动按快照版本丢弃；全量深度订阅每个证券只需保留一条
+     */
+    private List<OrderBookLevelChange> collapseQueuedLevelChanges(Subscription subscription,
+                                                                  List<OrderBookLevelChange> levelChanges) {
+        Set<String> symbols = new LinkedHashSet<>();
+        if (!subscription.isIncrementalRefresh()) {
+            List<OrderBookLevelChange> distinct = new ArrayList<>();
+            for (OrderBookLevelChange change : levelChanges) {
+                if (symbols.add(change.getSymbol())) {
+                    distinct.add(change);
+                }
+            }
+            return distinct;
+        }
+        for (OrderBookLevelChange change : levelChanges) {
+            symbols.add(change.getSymbol());
+        }
+        for (OrderBookLevelChange change : subscription.drainPendingLevelChanges()) {
+            symbols.add(change.getSymbol());
+        }
+        List<OrderBookLevelChange> refreshes = toBookRefreshes(subscription, symbols);
+        subscription.recordBookRefreshes(refreshes);
+        return refreshes;
+    }
+    
+    /**
+     * 按订阅的档位数和买卖方向构建各证券当前的订单簿快照
+     */
+    private List<OrderBookLevelChange> toBookRefreshes(Subscription subscription, Set<String> symbols) {
+        boolean includeBids = subscription.isSubscribedToType(MDEntryType.BID);
+        boolean includeOffers = subscription.isSubscribedToType(MDEntryType.OFFER);
+        List<OrderBookLevelChange> refreshes = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            OrderBook book = orderBookService.getBook(symbol);
+            if (book != null) {
+                refreshes.add(book.toBookRefresh(subscription.getReqId(), subscription.getMarketDepth(),
+                    includeBids, includeOffers));
+            }
+        }
+        return refreshes;
+    }
+    
+    /**
+     * 尚未调度的订阅按其下次到期时间放入时间轮
+     */
+    private void schedule(SubscriptionTimerWheel timerWheel, Subscription subscription, long now) {
+        if (!subscription.isScheduled()) {
+            subscription.setScheduled(true);
+            timerWheel.schedule(subscription, Math.max(now, subscription.getNextDueTime()));
         }
     }
     
     /**
-     * 创建符合订阅条件的更新消息
+     * 订阅到期：将累积的变动放入会话出站队列
+     * 初始快照尚未发送完成时不取出变动，等快照发出后再推送；
+     * 取出前按估算的消息数和字节数预留会话推送等级的令牌，同一时刻到期的订阅依次预留，合计不超过限额；
+     * 令牌不足时不取出变动，留在订阅中继续按条目合并，令牌恢复时重新调度，既不丢弃也不阻塞分片
      */
-    private MarketDataSnapshotFullRefresh createUpdateMessage(Subscription subscription, List<MarketData> updates) {
-        MarketDataSnapshotFullRefresh message = new MarketDataSnapshotFullRefresh();
+    private void flushSubscription(SubscriptionTimerWheel timerWheel, Subscription subscription, long now) {
+        subscription.setScheduled(false);
+        if (subscription.isCancelled()) {
+            return;
+        }
+        
+        // 检查会话是否活跃：已绑定上下文的订阅直接检查会话句柄，不查找全局会话表
+        SessionContext context = subscription.getSessionContext();
+        boolean active = context != null ? context.isActive() : isLoggedOn(subscription.getSessionId());
+        if (!active) {
+            removeSession(subscription.getSessionId());
+            return;
+        }
+        
+        if (subscription.isAwaitingSnapshot()) {
+            subscription.setScheduled(true);
+            timerWheel.schedule(subscription, now + distributionIntervalMillis);
+            return;
+        }
+        subscription.discardSnapshotLevelChanges();
+        
+        if (context != null && context.getDeliveryTier().isRateLimited()) {
+            // 没有会发出的消息时（如全量订阅只有删除）直接取出，不预留
+            int messages = subscription.estimatePendingMessages();
+            long bytes = messages > 0 && context.isByteLimited() ? subscription.estimatePendingBytes(messages) : 0;
+            if (messages > 0 && !context.tryReserve(messages, bytes)) {
+                context.recordThrottled();
+                subscription.setScheduled(true);
+                timerWheel.schedule(subscription, now + Math.max(1, context.throttleDelayMillis(messages, bytes)));
+                return;
+            }
+        }
         
+        List<MarketDataChange> changes = subscription.drainPendingChanges();
+        List<OrderBookLevelChange> levelChanges = subscription.drainPendingLevelChanges();
+        if (changes.isEmpty() && levelChanges.isEmpty()) {
+            return;
+        }
+        // 放入会话出站队列，由发送线程编码并发送，分发线程不再阻塞在单个会话上
+        outboundDispatcher.enqueue(subscription, changes, levelChanges);
+        subscription.setLastUpdateTime(now);
+    }
+    
+    private static boolean isLoggedOn(SessionID sessionId) {
+        Session session = Session.lookupSession(sessionId);
+        return session != null && session.isLoggedOn();
+    }
+    
+    /**
+     * 将一个订阅的更新编码为FIX消息并发送，在出站发送线程上执行
+     */
+    private void sendBatch(Subscription subscription, List<MarketDataChange> changes,
+                           List<OrderBookLevelChange> levelChanges) throws SessionNotFound {
+        int messageCount = 0;
+        int changeMessages = 0;
+        try {
+            if (!changes.isEmpty()) {
+                changeMessages = sendChanges(subscription, changes);
+                messageCount += changeMessages;
+            }
+            if (!levelChanges.isEmpty()) {
+                messageCount += sendLevelChanges(subscription, levelChanges);
+            }
+        } catch (SessionNotFound e) {
+            metrics.recordSendFailure();
+            if (subscription.getSessionContext() != null) {
+                subscription.getSessionContext().recordSendFailure();
+            }
+            throw e;
+        }
+        recordSymbolClasses(subscription, changes, levelChanges, changeMessages);
+        // 行情到发出的延迟按批次中最早写入缓存的变动计算，合并的变动取被合并的最早一次，慢消费者的积压不会被掩盖
+        long oldestReceivedNanos = 0;
+        for (MarketDataChange change : changes) {
+            long receivedNanos = change.getFirstReceivedNanos();
+            if (oldestReceivedNanos == 0 || receivedNanos - oldestReceivedNanos < 0) {
+                oldestReceivedNanos = receivedNanos;
+            }
+        }
+        SessionContext context = subscription.getSessionContext();
+        if (context != null) {
+            metrics.recordBatch(context.getMetrics(), messageCount, changes.size() + levelChanges.size(),
+                oldestReceivedNanos, System.nanoTime());
+        } else {
+            metrics.recordBatch(subscription.getSessionId(), messageCount, changes.size() + levelChanges.size(),
+                oldestReceivedNanos, System.nanoTime());
+        }
+    }
+    
+    /**
+     * 按证券类别记录批次发送的条目数和消息数，条目所在的消息按与发送相同的切分规则推算
+     * @param changeMessages 条目变动发送的消息数，档位变动的消息排在其后
+     */
+    private void recordSymbolClasses(Subscription subscription, List<MarketDataChange> changes,
+                                     List<OrderBookLevelChange> levelChanges, int changeMessages) {
+        MarketDataMetrics.SymbolClassTally tally = metrics.symbolClassTally(marketDataCache.getSymbolRegistry());
+        boolean incremental = subscription.isIncrementalRefresh();
+        int sentEntries = 0;
+        for (MarketDataChange change : changes) {
+            // 全量消息不携带已删除的条目
+            if (!incremental && change.isDelete()) {
+                continue;
+            }
+            tally.add(change.getEntry().getSymbolId(), sentEntries++ / 50);
+        }
+        int message = changeMessages;
         int entryCount = 0;
-        for (MarketData data : updates) {
-            // 检查是否符合订阅条件
-            if (subscription.isSubscribedTo(data.getSymbol()) && 
-                subscription.isSubscribedToType(data.getEntryType())) {
-                
-                // 添加市场数据条目
-                MarketDataSnapshotFullRefresh.NoMDEntries group = new MarketDataSnapshotFullRefresh.NoMDEntries();
-                group.set(new MDEntryType(data.getEntryType()));
-                group.set(new Symbol(data.getSymbol()));
-                group.set(new MDEntryPrice(data.getPrice()));
-                group.set(new MDEntrySize(data.getSize()));
-                group.set(new MDEntryTime(data.getUpdateTime()));
-                
-                message.addGroup(group);
-                entryCount++;
-                
-                // 限制单条消息大小，避免过大
-                if (entryCount >= 50) {
-                    break;
+        for (OrderBookLevelChange change : levelChanges) {
+            // 全量订阅每个证券一条前N档快照，折叠的订单簿快照也单独成一条消息
+            if (!incremental || change.isBookRefresh()) {
+                if (entryCount > 0) {
+                    message++;
+                    entryCount = 0;
+                }
+                tally.add(change.getSymbolId(), message++);
+                continue;
+            }
+            tally.add(change.getSymbolId(), message);
+            if (++entryCount >= 50) {
+                message++;
+                entryCount = 0;
+            }
+        }
+    }
+    
+    /**
+     * 通过QuickFIX/J发送一条消息并记录发送耗时，已绑定上下文的订阅直接使用会话句柄
+     * 推送等级的令牌已在分片线程取出变动时预留，这里不再扣减
+     */
+    private void sendToTarget(Message message, Subscription subscription) throws SessionNotFound {
+        long start = System.nanoTime();
+        SessionContext context = subscription.getSessionContext();
+        if (context != null) {
+            context.send(message);
+        } else {
+            Session.sendToTarget(message, subscription.getSessionId());
+        }
+        metrics.recordSend(System.nanoTime() - start);
+    }
+    
+    /**
+     * 发送条目变动
+     * @return 发送的消息数
+     */
+    private int sendChanges(Subscription subscription, List<MarketDataChange> changes) throws SessionNotFound {
+        if (subscription.isIncrementalRefresh()) {
+            // 增量变动不能丢弃，超过单条消息上限时拆分为多条发送
+            List<MarketDataIncrementalRefresh> refreshes = createIncrementalRefreshes(subscription, changes);
+            for (Message refresh : refreshes) {
+                sendToTarget(refresh, subscription);
+            }
+            return refreshes.size();
+        }
+        
+        // 合并后的变动同样不能丢弃，超过单条消息上限时拆分为多条全量消息
+        List<MarketDataSnapshotFullRefresh> updateMessages = createUpdateMessages(subscription, changes);
+        for (Message updateMessage : updateMessages) {
+            sendToTarget(updateMessage, subscription);
+        }
+        return updateMessages.size();
+    }
+    
+    /**
+     * 发送档位变动：增量订阅直接推送档位变动(35=X)，每条消息最多50个条目，折叠的订单簿快照按原位置推送(35=W)；
+     * 全量订阅对每个有变动的证券推送一条前N档快照(35=W)，只读取订单簿的前N档
+     * @return 发送的消息数
+     */
+    private int sendLevelChanges(Subscription subscription, List<OrderBookLevelChange> levelChanges)
+                                 throws SessionNotFound {
+        int sent = 0;
+        if (subscription.isIncrementalRefresh()) {
+            MarketDataIncrementalRefresh message = null;
+            int entryCount = 0;
+            for (OrderBookLevelChange change : levelChanges) {
+                if (change.isBookRefresh()) {
+                    // 折叠后的订单簿快照：先推送之前累积的增量，保持顺序
+                    if (message != null) {
+                        sendToTarget(message, subscription);
+                        sent++;
+                        message = null;
+                    }
+                    sendToTarget(change.getBookRefresh(), subscription);
+                    sent++;
+                    continue;
+                }
+                if (message == null) {
+                    message = new MarketDataIncrementalRefresh();
+                    message.set(new MDReqID(subscription.getReqId()));
+                    entryCount = 0;
+                }
+                message.addGroup(change.getIncrementalGroup());
+                if (++entryCount >= 50) {
+                    sendToTarget(message, subscription);
+                    sent++;
+                    message = null;
                 }
             }
+            if (message != null) {
+                sendToTarget(message, subscription);
+                sent++;
+            }
+            return sent;
         }
         
-        return entryCount > 0 ? message : null;
+        boolean includeBids = subscription.isSubscribedToType(MDEntryType.BID);
+        boolean includeOffers = subscription.isSubscribedToType(MDEntryType.OFFER);
+        for (OrderBook book : changedBooks(levelChanges)) {
+            sendToTarget(book.toFullRefresh(subscription.getReqId(), subscription.getMarketDepth(),
+                includeBids, includeOffers), subscription);
+            sent++;
+        }
+        return sent;
+    }
+    
+    /**
+     * 档位变动涉及的订单簿，按首次变动的顺序去重
+     */
+    private List<OrderBook> changedBooks(List<OrderBookLevelChange> levelChanges) {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (OrderBookLevelChange change : levelChanges) {
+            symbols.add(change.getSymbol());
+        }
+        List<OrderBook> books = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            OrderBook book = orderBookService.getBook(symbol);
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+    
+    /**
+     * 会话登录：取得会话句柄，创建出站队列和会话指标，登记会话上下文，不限制推送速率
+     */
+    public SessionContext openSession(SessionID sessionId) {
+        return openSession(sessionId, DeliveryTier.UNLIMITED);
+    }
+    
+    /**
+     * 会话登录并指定推送等级
+     */
+    public SessionContext openSession(SessionID sessionId, DeliveryTier tier) {
+        SessionContext context = new SessionContext(sessionId, Session.lookupSession(sessionId),
+            outboundDispatcher.openQueue(sessionId), metrics.sessionMetrics(sessionId));
+        context.setDeliveryTier(tier);
+        sessionRegistry.register(context);
+        return context;
+    }
+    
+    /**
+     * 移除会话的所有订阅及其出站队列
+     * 先关闭会话上下文，该会话的所有订阅立即失效，再从订阅索引中清理
+     */
+    public void removeSession(SessionID sessionId) {
+        sessionRegistry.unregister(sessionId);
+        subscriptionManager.removeAllSubscriptions(sessionId);
+        outboundDispatcher.removeSession(sessionId);
+        metrics.removeSession(sessionId);
+    }
+    
+    /**
+     * 出站队列被分发器停用：只有该队列仍属于当前登记的会话上下文时才移除会话，重新登录的新会话不受影响
+     */
+    private void onQueueRetired(SessionOutboundQueue queue) {
+        SessionContext context = sessionRegistry.get(queue.getSessionId());
+        if (context != null && context.getOutboundQueue() == queue) {
+            System.err.println("Outbound queue retired, closing session " + queue.getSessionId());
+            removeSession(queue.getSessionId());
+        }
+    }
+    
+    /**
+     * 获取出站分发器，用于查询各会话的队列深度和延迟
+     */
+    public OutboundDispatcher getOutboundDispatcher() {
+        return outboundDispatcher;
+    }
+    
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+    
+    /**
+     * 获取分发指标
+     */
+    public MarketDataMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 创建符合订阅条件的全量更新消息(35=W)（updates已按订阅条件过滤），每条消息最多50个条目
+     * 全量刷新无法表达删除，已删除的条目不再出现在消息中；全部为删除时返回空列表
+     */
+    static List<MarketDataSnapshotFullRefresh> createUpdateMessages(Subscription subscription,
+                                                                    List<MarketDataChange> updates) {
+        List<MarketDataSnapshotFullRefresh> messages = new ArrayList<>();
+        MarketDataSnapshotFullRefresh message = null;
+        int entryCount = 0;
+        
+        for (MarketDataChange change : updates) {
+            if (change.isDelete()) {
+                continue;
+            }
+            if (message == null) {
+                message = new MarketDataSnapshotFullRefresh();
+                if (subscription.getReqId() != null) {
+                    message.set(new MDReqID(subscription.getReqId()));
+                }
+                messages.add(message);
+                entryCount = 0;
+            }
+            // 添加市场数据条目，条目组在变动时构建一次，所有订阅者共享
+            message.addGroup(change.getEntry().getFullRefreshGroup());
+            
+            // 限制单条消息大小，避免过大
+            if (++entryCount >= 50) {
+                message = null;
+            }
+        }
+        
+        return messages;
+    }
+    
+    /**
+     * 创建增量刷新消息(35=X)，每个条目只携带变动方式和变动后的值，每条消息最多50个条目
+     */
+    static List<MarketDataIncrementalRefresh> createIncrementalRefreshes(Subscription subscription,
+                                                                         List<MarketDataChange> updates) {
+        List<MarketDataIncrementalRefresh> messages = new ArrayList<>();
+        MarketDataIncrementalRefresh message = null;
+        int entryCount = 0;
+        
+        for (MarketDataChange change : updates) {
+            if (message == null) {
+                message = new MarketDataIncrementalRefresh();
+                message.set(new MDReqID(subscription.getReqId()));
+                messages.add(message);
+                entryCount = 0;
+            }
+
+            // 条目组按变动方式缓存在条目上，所有订阅者共享
+            message.addGroup(change.getEntry().getIncrementalGroup(change.getUpdateAction()));
+            
+            // 限制单条消息大小，避免过大
+            if (++entryCount >= 50) {
+                message = null;
+            }
+        }
+        
+        return messages;
     }
     
     /**
@@ -111,6 +669,10 @@ public class MarketDataDistributor {
         } catch (InterruptedException e) {
             executor.shutdownNow();
         }
+        for (ExecutorService shardExecutor : shardExecutors) {
+            shardExecutor.shutdown();
+        }
+        // 分发线程停止后再关闭发送线程，避免停止过程中仍有新批次入队
+        outboundDispatcher.shutdown();
     }
-}
-    
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,140 @@
+import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 市场数据条目，缓存中某个证券某个数据类型在当前时刻的值（已归一化的行情tick）
+ * 同时缓存该值对应的FIX重复组，同一次变动只构建一次，所有订阅者和快照共享，
+ * 组装消息时只需复制组（QuickFIX/J的addGroup会复制传入的组）
+ */
+public class MarketDataEntry {
+    // 估算条目组编码长度时证券代码以外的字段(类型、价格、数量、时间、变动方式、序号及其标签)的字节数
+    static final int ESTIMATED_GROUP_BYTES = 64;
+
+    private final String symbol;
+    private final int symbolId;             // 证券ID（见SymbolRegistry）
+    private final char entryType;           // 数据类型(MDEntryType)
+    private final double price;
+    private final double size;
+    private final long updateTime;          // 更新时间(毫秒时间戳)
+    private final long receivedNanos = System.nanoTime();   // 写入缓存的时刻，用于统计行情到发出的延迟
+    // 行情日志中的证券序号(RptSeq)，分别对应产生该值的新增/变动和该值的删除，0表示未记录
+    private volatile long sequence;
+    private volatile long deleteSequence;
+    // 以下重复组按需构建后复用，并发构建时最多重复构建一次，结果相同
+    private volatile MarketDataSnapshotFullRefresh.NoMDEntries fullRefreshGroup;
+    private final AtomicReferenceArray<MarketDataIncrementalRefresh.NoMDEntries> incrementalGroups =
+        new AtomicReferenceArray<>(3);   // 按MDUpdateAction(NEW/CHANGE/DELETE)索引
+
+    public MarketDataEntry(String symbol, int symbolId, char entryType, double price, double size, long updateTime) {
+        this.symbol = symbol;
+        this.symbolId = symbolId;
+        this.entryType = entryType;
+        this.price = price;
+        this.size = size;
+        this.updateTime = updateTime;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    public char getEntryType() {
+        return entryType;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * 记录该条目对应变动在行情日志中的证券序号，须在构建增量条目组之前设置
+     */
+    public void setSequence(char updateAction, long sequence) {
+        if (updateAction == MDUpdateAction.DELETE) {
+            this.deleteSequence = sequence;
+        } else {
+            this.sequence = sequence;
+        }
+    }
+
+    public long getSequence(char updateAction) {
+        return updateAction == MDUpdateAction.DELETE ? deleteSequence : sequence;
+    }
+
+    /**
+     * 条目键：证券ID和数据类型合成的整数，用于合并同一条目的多次变动
+     */
+    public int getKey() {
+        return symbolId << 7 | (entryType & 0x7F);
+    }
+
+    /**
+     * 获取全量刷新(35=W)使用的条目组
+     */
+    public MarketDataSnapshotFullRefresh.NoMDEntries getFullRefreshGroup() {
+        MarketDataSnapshotFullRefresh.NoMDEntries group = fullRefreshGroup;
+        if (group == null) {
+            group = new MarketDataSnapshotFullRefresh.NoMDEntries();
+            group.set(new MDEntryType(entryType));
+            group.set(new Symbol(symbol));
+            group.set(new MDEntryPrice(price));
+            group.set(new MDEntrySize(size));
+            group.set(new MDEntryTime(new Date(updateTime)));
+            fullRefreshGroup = group;
+        }
+        return group;
+    }
+
+    /**
+     * 获取增量刷新(35=X)使用的条目组
+     */
+    public MarketDataIncrementalRefresh.NoMDEntries getIncrementalGroup(char updateAction) {
+        int slot = updateAction - MDUpdateAction.NEW;
+        MarketDataIncrementalRefresh.NoMDEntries group = incrementalGroups.get(slot);
+        if (group == null) {
+            group = new MarketDataIncrementalRefresh.NoMDEntries();
+            group.set(new MDUpdateAction(updateAction));
+            group.set(new MDEntryType(entryType));
+            group.set(new Symbol(symbol));
+            // 删除只需标识条目，不携带价格和数量
+            if (updateAction != MDUpdateAction.DELETE) {
+                group.set(new MDEntryPrice(price));
+                group.set(new MDEntrySize(size));
+                group.set(new MDEntryTime(new Date(updateTime)));
+            }
+            long rptSeq = getSequence(updateAction);
+            if (rptSeq > 0) {
+                group.set(new RptSeq((int) rptSeq));
+            }
+            incrementalGroups.set(slot, group);
+        }
+        return group;
+    }
+
+    /**
+     * 估算条目组编码后的字节数：证券代码长度加其余字段的固定估算，不编码、不分配，
+     * 用于快照按字节预算切分消息和推送等级按字节限速
+     */
+    public int estimateGroupBytes() {
+        return ESTIMATED_GROUP_BYTES + symbol.length();
+    }
+}
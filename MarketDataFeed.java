@@ -0,0 +1,35 @@
+/**
+ * 推送式行情源：行情到达时立即写入接入接口，不等待轮询
+ * 同一行情源只能从一个线程写入sink（sink背后是单生产者环形缓冲区）
+ */
+public interface MarketDataFeed {
+
+    /**
+     * 行情源名称，用于日志和监控
+     */
+    String getName();
+
+    /**
+     * 该行情源的证券类别(工具类型，如STOCK/FUTURES/FOREX)，接入时据此给新出现的证券分类；null表示不分类
+     */
+    default String getInstrumentType() {
+        return null;
+    }
+
+    /**
+     * 该行情源的交易所，接入时据此登记新出现的证券；null表示不登记
+     */
+    default String getExchange() {
+        return null;
+    }
+
+    /**
+     * 开始推送行情，此后每条行情都写入sink
+     */
+    void start(MarketDataSink sink);
+
+    /**
+     * 停止推送，返回后不再写入sink
+     */
+    void stop();
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 行情接入管道：每个推送式行情源写入自己的单生产者环形缓冲区，
+ * 由接入线程按写入顺序依次取出并写入下游（最新值缓存），分发器每个周期从缓存取出变动；
+ * 配置了采集目录时，每个行情源先由其接入线程写入自己的采集文件
+ * 行情从到达到进入缓存只经过一次环形缓冲区，不再受轮询间隔限制
+ * 行情源分配到多个接入线程上并行接入，彼此之间没有全局锁，一个慢行情源不会拖慢其他行情源；
+ * 同一行情源始终由同一接入线程处理，保持其行情顺序
+ */
+public class MarketDataIngestor {
+    public static final int DEFAULT_RING_CAPACITY = 64 * 1024;
+    private static final int DRAIN_BATCH = 256;         // 每个行情源每轮最多取出的条数，避免单个行情源独占接入线程
+    private static final int SPIN_ROUNDS = 100;         // 空闲时先自旋的轮数，之后短暂休眠
+
+    private final MarketDataSink downstream;
+    // 证券注册表，行情源声明了类别或交易所时用于给新证券分类；为null时不分类
+    private final SymbolRegistry symbolRegistry;
+    private final int ringCapacity;
+    // 采集目录，每个行情源采集到其中以行情源名称命名的文件；为null时不采集
+    private final Path captureDirectory;
+    private final List<TickCaptureWriter> captures = new CopyOnWriteArrayList<>();
+    private final Worker[] workers;
+    private volatile boolean running = true;
+
+    public MarketDataIngestor(MarketDataSink downstream) {
+        this(downstream, null, DEFAULT_RING_CAPACITY, 1);
+    }
+
+    public MarketDataIngestor(MarketDataSink downstream, SymbolRegistry symbolRegistry, int ingestThreads) {
+        this(downstream, symbolRegistry, DEFAULT_RING_CAPACITY, ingestThreads);
+    }
+
+    /**
+     * @param ringCapacity  每个行情源的环形缓冲区容量(条)
+     * @param ingestThreads 接入线程数，行情源按当前负载最少的原则分配到各线程；下游须支持多线程写入
+     */
+    public MarketDataIngestor(MarketDataSink downstream, SymbolRegistry symbolRegistry, int ringCapacity,
+                              int ingestThreads) {
+        this(downstream, symbolRegistry, ringCapacity, ingestThreads, null);
+    }
+
+    /**
+     * @param captureDirectory 采集目录，每个行情源由其接入线程采集到自己的文件(行情源名称.tick)；为null时不采集
+     */
+    public MarketDataIngestor(MarketDataSink downstream, SymbolRegistry symbolRegistry, int ringCapacity,
+                              int ingestThreads, Path captureDirectory) {
+        if (ingestThreads < 1) {
+            throw new IllegalArgumentException("Ingest threads must be positive: " + ingestThreads);
+        }
+        this.downstream = downstream;
+        this.symbolRegistry = symbolRegistry;
+        this.ringCapacity = ringCapacity;
+        this.captureDirectory = captureDirectory;
+        this.workers = new Worker[ingestThreads];
+        for (int i = 0; i < ingestThreads; i++) {
+            workers[i] = new Worker(ingestThreads == 1 ? "market-data-ingest" : "market-data-ingest-" + i);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * 接入一个推送式行情源，为其分配环形缓冲区和接入线程并开始推送
+     */
+    public void addFeed(MarketDataFeed feed) {
+        Lane lane = new Lane(feed, new TickRingBuffer(ringCapacity), openCapture(feed, laneSink(feed)));
+        Worker worker;
+        synchronized (workers) {
+            worker = workers[0];
+            for (Worker candidate : workers) {
+                if (candidate.lanes.size() < worker.lanes.size()) {
+                    worker = candidate;
+                }
+            }
+            worker.lanes.add(lane);
+        }
+        feed.start(lane.ring);
+        System.out.println("Market data feed started: " + feed.getName() + " on " + worker.thread.getName());
+    }
+
+    /**
+     * 行情源声明了类别或交易所时，在写入下游前给首次出现的证券登记；
+     * 已见过的证券记录在通道自己的集合中，只由该通道的接入线程访问
+     */
+    private MarketDataSink laneSink(MarketDataFeed feed) {
+        String instrumentType = feed.getInstrumentType();
+        String exchange = feed.getExchange();
+        if (symbolRegistry == null || (instrumentType == null && exchange == null)) {
+            return downstream;
+        }
+        Set<String> seen = new HashSet<>();
+        return new MarketDataSink() {
+            @Override
+            public void onMarketData(String symbol, char entryType, double price, double size, long updateTime) {
+                if (seen.add(symbol)) {
+                    symbolRegistry.classify(symbol, instrumentType, exchange);
+                }
+                downstream.onMarketData(symbol, entryType, price, size, updateTime);
+            }
+
+            @Override
+            public void onMarketDataDelete(String symbol, char entryType, long updateTime) {
+                downstream.onMarketDataDelete(symbol, entryType, updateTime);
+            }
+
+            @Override
+            public void onLevelUpdate(String symbol, char side, double price, double size, long updateTime) {
+                if (seen.add(symbol)) {
+                    symbolRegistry.classify(symbol, instrumentType, exchange);
+                }
+                downstream.onLevelUpdate(symbol, side, price, size, updateTime);
+            }
+        };
+    }
+
+    /**
+     * 配置了采集目录时，通道取出的行情先写入该行情源自己的采集文件再转交下游；打开失败时不采集
+     */
+    private MarketDataSink openCapture(MarketDataFeed feed, MarketDataSink sink) {
+        if (captureDirectory == null) {
+            return sink;
+        }
+        Path file = captureDirectory.resolve(feed.getName() + ".tick");
+        try {
+            TickCaptureWriter capture = new TickCaptureWriter(file, sink);
+            captures.add(capture);
+            return capture;
+        } catch (IOException e) {
+            System.err.println("Failed to open tick capture " + file + ": " + e.getMessage());
+            return sink;
+        }
+    }
+
+    /**
+     * 各行情源缓冲区当前积压的条数
+     */
+    public List<String> getBacklog() {
+        List<String> backlog = new ArrayList<>();
+        for (Worker worker : workers) {
+            for (Lane lane : worker.lanes) {
+                backlog.add(lane.feed.getName() + " queued=" + lane.ring.size() + "/" + lane.ring.capacity()
+                    + " fullWaits=" + lane.ring.getFullWaits() + " thread=" + worker.thread.getName());
+            }
+        }
+        return backlog;
+    }
+
+    /**
+     * 停止所有行情源，将缓冲区中剩余的行情写入下游后停止接入线程，最后关闭采集文件
+     */
+    public void shutdown() {
+        for (Worker worker : workers) {
+            for (Lane lane : worker.lanes) {
+                lane.feed.stop();
+            }
+        }
+        running = false;
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Lane lane : worker.lanes) {
+                while (lane.ring.drainTo(lane.sink, DRAIN_BATCH) > 0) {
+                    // 继续取出直到为空
+                }
+            }
+        }
+        // 接入线程已停止，剩余行情也已写入，此时关闭采集文件
+        for (TickCaptureWriter capture : captures) {
+            try {
+                capture.close();
+                System.out.println("Tick capture closed after " + capture.getRecordCount() + " records");
+            } catch (IOException e) {
+                System.err.println("Failed to close tick capture: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 接入线程：轮流取出分配给它的各行情源缓冲区
+     */
+    private class Worker {
+        final List<Lane> lanes = new CopyOnWriteArrayList<>();
+        final Thread thread;
+
+        Worker(String name) {
+            this.thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+        }
+
+        private void run() {
+            int idleRounds = 0;
+            while (running) {
+                int drained = 0;
+                for (Lane lane : lanes) {
+                    try {
+                        drained += lane.ring.drainTo(lane.sink, DRAIN_BATCH);
+                    } catch (RuntimeException e) {
+                        drained++;
+                        System.err.println("Error ingesting market data from " + lane.feed.getName() + ": " + e.getMessage());
+                    }
+                }
+                if (drained > 0) {
+                    idleRounds = 0;
+                } else if (++idleRounds < SPIN_ROUNDS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+            }
+        }
+    }
+
+    /**
+     * 接入通道：一个行情源、其专用的环形缓冲区，以及取出后写入的目标
+     */
+    private static class Lane {
+        final MarketDataFeed feed;
+        final TickRingBuffer ring;
+        final MarketDataSink sink;
+
+        Lane(MarketDataFeed feed, TickRingBuffer ring, MarketDataSink sink) {
+            this.feed = feed;
+            this.ring = ring;
+            this.sink = sink;
+        }
+    }
+}
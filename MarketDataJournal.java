@@ -0,0 +1,280 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 行情日志：按分发顺序追加已分发的市场数据变动，每个证券单独编号
+ * 日志按固定大小分段，每段通过内存映射文件写入，追加只是一次内存拷贝；
+ * 断线重连或中途加入的订阅可以按"某证券自序号N之后"顺序读取补发，不必重建快照；
+ * 序号按证券编号，补发每次只针对一个证券
+ *
+ * 记录格式：int 记录长度 | long 证券序号 | long 更新时间 | double 价格 | double 数量 |
+ *          char 数据类型 | char 变动方式 | short 证券代码长度 | 证券代码(ASCII)
+ * 记录长度为0表示该段后续没有数据
+ */
+public class MarketDataJournal implements Closeable {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 8 + 8 + 2 + 2 + 2;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;                              // 保留的段数，超出时删除最早的段
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> lastSequenceBySymbol = new ConcurrentHashMap<>();
+    private long nextSegmentIndex;
+
+    public MarketDataJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, 16);
+    }
+
+    /**
+     * @param segmentBytes 每段文件大小
+     * @param maxSegments  保留的段数
+     */
+    public MarketDataJournal(Path directory, long segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes <= HEADER_BYTES || segmentBytes > Integer.MAX_VALUE || maxSegments < 1) {
+            throw new IllegalArgumentException("Invalid journal segment configuration");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    /**
+     * 追加一个分发周期的全部变动，整批只加锁一次，证券序号记录在条目上
+     * 写入失败时该批剩余的变动不再记录，只是无法补发
+     */
+    public synchronized void appendAll(List<MarketDataChange> changes) throws IOException {
+        for (MarketDataChange change : changes) {
+            MarketDataEntry entry = change.getEntry();
+            long sequence = append(entry.getSymbol(), entry.getEntryType(), change.getUpdateAction(),
+                entry.getPrice(), entry.getSize(), entry.getUpdateTime());
+            entry.setSequence(change.getUpdateAction(), sequence);
+        }
+    }
+
+    /**
+     * 追加一条变动，返回其证券序号，调用方持有日志锁
+     */
+    private long append(String symbol, char entryType, char updateAction,
+                        double price, double size, long updateTime) throws IOException {
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.US_ASCII);
+        int length = HEADER_BYTES + symbolBytes.length;
+        Segment segment = currentSegment(length);
+        long sequence = lastSequenceBySymbol.getOrDefault(symbol, 0L) + 1;
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.limit;
+        buffer.position(position + 4);
+        buffer.putLong(sequence);
+        buffer.putLong(updateTime);
+        buffer.putDouble(price);
+        buffer.putDouble(size);
+        buffer.putChar(entryType);
+        buffer.putChar(updateAction);
+        buffer.putShort((short) symbolBytes.length);
+        buffer.put(symbolBytes);
+        // 最后写入长度，读取方只会看到完整的记录
+        buffer.putInt(position, length);
+
+        segment.recordAppended(symbol, sequence, position + length);
+        lastSequenceBySymbol.put(symbol, sequence);
+        return sequence;
+    }
+
+    /**
+     * 证券最新的序号，没有记录时返回0
+     */
+    public long getLastSequence(String symbol) {
+        return lastSequenceBySymbol.getOrDefault(symbol, 0L);
+    }
+
+    /**
+     * 日志是否保留了指定证券自序号N之后的全部记录，已被删除的段中的记录无法补发
+     */
+    public boolean canReplay(String symbol, long sinceSequence) {
+        if (getLastSequence(symbol) <= sinceSequence) {
+            return true;
+        }
+        long first = firstRetainedSequence(symbol);
+        return first != 0 && first <= sinceSequence + 1;
+    }
+
+    /**
+     * 按日志顺序读取指定证券自序号N之后（不含N）的记录
+     * 不包含该证券新记录的段直接跳过
+     */
+    public void replay(String symbol, long sinceSequence, Consumer<JournalRecord> consumer) {
+        byte[] target = symbol.getBytes(StandardCharsets.US_ASCII);
+        for (Segment segment : segments) {
+            if (!segment.hasRecordsAfter(symbol, sinceSequence)) {
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int limit = segment.limit;
+            int position = 0;
+            byte[] symbolBytes = new byte[64];
+            while (position < limit) {
+                int length = buffer.getInt(position);
+                buffer.position(position + 4);
+                long sequence = buffer.getLong();
+                long updateTime = buffer.getLong();
+                double price = buffer.getDouble();
+                double size = buffer.getDouble();
+                char entryType = buffer.getChar();
+                char updateAction = buffer.getChar();
+                int symbolLength = buffer.getShort();
+                if (symbolBytes.length < symbolLength) {
+                    symbolBytes = new byte[symbolLength];
+                }
+                buffer.get(symbolBytes, 0, symbolLength);
+                position += length;
+
+                if (sequence <= sinceSequence
+                        || !Arrays.equals(symbolBytes, 0, symbolLength, target, 0, target.length)) {
+                    continue;
+                }
+                consumer.accept(new JournalRecord(symbol, sequence, entryType, updateAction, price, size, updateTime));
+            }
+        }
+    }
+
+    /**
+     * 将已写入的数据刷到磁盘
+     */
+    public synchronized void flush() {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+    }
+
+    private long firstRetainedSequence(String symbol) {
+        for (Segment segment : segments) {
+            Long first = segment.firstSequenceBySymbol.get(symbol);
+            if (first != null) {
+                return first;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 获取能容纳指定长度记录的当前段，空间不足时滚动到新段
+     */
+    private Segment currentSegment(int recordLength) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        // 每段末尾至少保留4字节的结束标记
+        if (segment == null || segment.limit + recordLength + 4 > segmentBytes) {
+            segment = openSegment(nextSegmentIndex++, true);
+            segments.add(segment);
+            while (segments.size() > maxSegments) {
+                Segment oldest = segments.remove(0);
+                oldest.channel.close();
+                Files.deleteIfExists(oldest.path);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * 启动时扫描已有的段，恢复各证券的最新序号，之后继续追加到最后一段
+     */
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long index = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = openSegment(index, false);
+            segments.add(segment);
+            nextSegmentIndex = index + 1;
+        }
+        for (Segment segment : segments) {
+            int position = 0;
+            int length;
+            while (position + 4 <= segmentBytes && (length = segment.buffer.getInt(position)) > 0) {
+                long sequence = segment.buffer.getLong(position + 4);
+                int symbolLength = segment.buffer.getShort(position + HEADER_BYTES - 2);
+                byte[] symbolBytes = new byte[symbolLength];
+                ByteBuffer view = segment.buffer.duplicate();
+                view.position(position + HEADER_BYTES);
+                view.get(symbolBytes);
+                String symbol = new String(symbolBytes, StandardCharsets.US_ASCII);
+                position += length;
+                segment.recordAppended(symbol, sequence, position);
+                lastSequenceBySymbol.merge(symbol, sequence, Math::max);
+            }
+        }
+    }
+
+    private Segment openSegment(long index, boolean create) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        if (create) {
+            Files.deleteIfExists(path);
+        }
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        FileChannel channel = file.getChannel();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(path, channel, buffer);
+    }
+
+    /**
+     * 日志段：一个内存映射文件及其包含的证券序号范围
+     */
+    private static class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final Map<String, Long> firstSequenceBySymbol = new ConcurrentHashMap<>();
+        final Map<String, Long> lastSequenceBySymbol = new ConcurrentHashMap<>();
+        volatile int limit;                 // 已写入的字节数，读取方只读取该位置之前的完整记录
+
+        Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void recordAppended(String symbol, long sequence, int newLimit) {
+            firstSequenceBySymbol.putIfAbsent(symbol, sequence);
+            lastSequenceBySymbol.put(symbol, sequence);
+            limit = newLimit;
+        }
+
+        /**
+         * 该段是否包含指定证券序号大于N的记录
+         */
+        boolean hasRecordsAfter(String symbol, long sinceSequence) {
+            Long last = lastSequenceBySymbol.get(symbol);
+            return last != null && last > sinceSequence;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import quickfix.SessionID;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 行情分发指标：覆盖接入 -> 分发 -> 发送(Session.sendToTarget)各阶段的延迟直方图和计数器，
+ * 按会话和证券类别细分，通过JMX(MarketDataMetricsMBean)拉取
+ * 热路径上只有计数器累加和直方图记录，不加锁、不分配对象（首次出现的会话和类别除外）
+ */
+public class MarketDataMetrics implements MarketDataMetricsMBean {
+    public static final String OBJECT_NAME = "marketdata:type=MarketDataMetrics";
+
+    private final LatencyHistogram cycleTime = new LatencyHistogram();          // 每个分发周期的耗时
+    private final LatencyHistogram ingestToDistribute = new LatencyHistogram(); // 变动从写入缓存到被分发周期取出
+    private final LatencyHistogram tickToWire = new LatencyHistogram();         // 批次中最早的变动从写入缓存到发送完成
+    private final LatencyHistogram sendTime = new LatencyHistogram();           // 单条消息的发送耗时
+    private final LongAdder changesDistributed = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder entriesSent = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final Map<SessionID, SessionMetrics> sessions = new ConcurrentHashMap<>();
+    private final Map<String, SymbolClassMetrics> symbolClasses = new ConcurrentHashMap<>();
+    private volatile OutboundDispatcher outboundDispatcher;        // 提供会话出站队列深度和延迟
+
+    /**
+     * 记录一个分发周期：取出的变动按证券类别计数并记录其在缓存中等待的时间（合并的变动按最早一次计算）
+     */
+    public void recordCycle(List<MarketDataChange> changes, SymbolRegistry symbolRegistry,
+                            long cycleStartNanos, long cycleEndNanos) {
+        cycleTime.record(cycleEndNanos - cycleStartNanos);
+        changesDistributed.add(changes.size());
+        for (MarketDataChange change : changes) {
+            long waitNanos = cycleStartNanos - change.getFirstReceivedNanos();
+            ingestToDistribute.record(waitNanos);
+            SymbolClassMetrics classMetrics =
+                symbolClassMetrics(symbolRegistry.symbolClassOf(change.getEntry().getSymbolId()));
+            classMetrics.changes.increment();
+            classMetrics.ingestToDistribute.record(waitNanos);
+        }
+    }
+
+    /**
+     * 开始按证券类别统计一个批次发送的消息数和条目数，由发送线程逐条目调用SymbolClassTally.add
+     */
+    SymbolClassTally symbolClassTally(SymbolRegistry symbolRegistry) {
+        return new SymbolClassTally(symbolRegistry);
+    }
+
+    /**
+     * 记录一条消息的发送耗时
+     */
+    public void recordSend(long sendNanos) {
+        sendTime.record(sendNanos);
+        messagesSent.increment();
+    }
+
+    /**
+     * 记录一个订阅批次发送完成；会话已移除（登出）时只计入总量，不重新创建会话指标
+     * @param oldestReceivedNanos 批次中最早的变动写入缓存的时刻，没有条目变动时为0
+     */
+    public void recordBatch(SessionID sessionId, int messageCount, int entryCount, long oldestReceivedNanos,
+                            long completedNanos) {
+        recordBatch(sessions.get(sessionId), messageCount, entryCount, oldestReceivedNanos, completedNanos);
+    }
+
+    /**
+     * 记录一个订阅批次发送完成，会话指标由调用方持有（见SessionContext），不再按会话查找；为null时只计入总量
+     */
+    void recordBatch(SessionMetrics session, int messageCount, int entryCount, long oldestReceivedNanos,
+                     long completedNanos) {
+        entriesSent.add(entryCount);
+        if (session != null) {
+            session.messages.add(messageCount);
+            session.entries.add(entryCount);
+        }
+        if (oldestReceivedNanos != 0) {
+            long lag = completedNanos - oldestReceivedNanos;
+            tickToWire.record(lag);
+            if (session != null) {
+                session.recordLag(lag);
+            }
+        }
+    }
+
+    public void recordSendFailure() {
+        sendFailures.increment();
+    }
+
+    public void removeSession(SessionID sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * 获取会话指标，不存在时创建
+     */
+    SessionMetrics sessionMetrics(SessionID sessionId) {
+        SessionMetrics session = sessions.get(sessionId);
+        return session != null ? session : sessions.computeIfAbsent(sessionId, SessionMetrics::new);
+    }
+
+    private SymbolClassMetrics symbolClassMetrics(String symbolClass) {
+        SymbolClassMetrics classMetrics = symbolClasses.get(symbolClass);
+        return classMetrics != null ? classMetrics : symbolClasses.computeIfAbsent(symbolClass, SymbolClassMetrics::new);
+    }
+
+    void setOutboundDispatcher(OutboundDispatcher outboundDispatcher) {
+        this.outboundDispatcher = outboundDispatcher;
+    }
+
+    public LatencyHistogram getTickToWireHistogram() {
+        return tickToWire;
+    }
+
+    @Override
+    public long getChangesDistributed() {
+        return changesDistributed.sum();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    @Override
+    public long getEntriesSent() {
+        return entriesSent.sum();
+    }
+
+    @Override
+    public long getSendFailures() {
+        return sendFailures.sum();
+    }
+
+    @Override
+    public long getCycleTimeP50Micros() {
+        return cycleTime.getValueAtPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getCycleTimeP99Micros() {
+        return cycleTime.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getCycleTimeMaxMicros() {
+        return cycleTime.getMaxValue() / 1000;
+    }
+
+    @Override
+    public long getIngestToDistributeP50Micros() {
+        return ingestToDistribute.getValueAtPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getIngestToDistributeP99Micros() {
+        return ingestToDistribute.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getTickToWireP50Micros() {
+        return tickToWire.getValueAtPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getTickToWireP99Micros() {
+        return tickToWire.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getTickToWireP999Micros() {
+        return tickToWire.getValueAtPercentile(99.9) / 1000;
+    }
+
+    @Override
+    public long getTickToWireMaxMicros() {
+        return tickToWire.getMaxValue() / 1000;
+    }
+
+    @Override
+    public long getSendTimeP99Micros() {
+        return sendTime.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getSendTimeMaxMicros() {
+        return sendTime.getMaxValue() / 1000;
+    }
+
+    @Override
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public long getDroppedBatches() {
+        OutboundDispatcher dispatcher = outboundDispatcher;
+        return dispatcher != null ? dispatcher.getDroppedBatchCount() : 0;
+    }
+
+    @Override
+    public long getMaxSessionLagMillis() {
+        OutboundDispatcher dispatcher = outboundDispatcher;
+        if (dispatcher == null) {
+            return 0;
+        }
+        long max = 0;
+        for (SessionID sessionId : dispatcher.getSessionIds()) {
+            max = Math.max(max, dispatcher.getLagMillis(sessionId));
+        }
+        return max;
+    }
+
+    @Override
+    public String[] getSessionStatistics() {
+        OutboundDispatcher dispatcher = outboundDispatcher;
+        List<String> lines = new ArrayList<>(sessions.size());
+        for (SessionMetrics session : sessions.values()) {
+            int queueDepth = dispatcher != null ? dispatcher.getQueueDepth(session.sessionId) : 0;
+            long queueLag = dispatcher != null ? dispatcher.getLagMillis(session.sessionId) : 0;
+            boolean slow = dispatcher != null && dispatcher.isSlowConsumer(session.sessionId);
+            lines.add(String.format("%s messages=%d entries=%d lastLag=%dus maxLag=%dus queueDepth=%d queueLag=%dms%s",
+                session.sessionId, session.messages.sum(), session.entries.sum(), session.lastLagNanos / 1000,
+                session.maxLagNanos.get() / 1000, queueDepth, queueLag, slow ? " SLOW" : ""));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getSymbolClassStatistics() {
+        List<String> lines = new ArrayList<>(symbolClasses.size());
+        for (SymbolClassMetrics symbolClass : symbolClasses.values()) {
+            lines.add(symbolClass.name + " changes=" + symbolClass.changes.sum()
+                + " messages=" + symbolClass.messages.sum() + " entries=" + symbolClass.entries.sum()
+                + " ingestToDistribute: " + symbolClass.ingestToDistribute);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public String getSummary() {
+        return "changes=" + getChangesDistributed() + " messages=" + getMessagesSent() + " entries=" + getEntriesSent()
+            + " sendFailures=" + getSendFailures() + " droppedBatches=" + getDroppedBatches()
+            + " sessions=" + getSessionCount()
+            + "\ncycleTime: " + cycleTime
+            + "\ningestToDistribute: " + ingestToDistribute
+            + "\ntickToWire: " + tickToWire
+            + "\nsendTime: " + sendTime;
+    }
+
+    @Override
+    public void reset() {
+        cycleTime.reset();
+        ingestToDistribute.reset();
+        tickToWire.reset();
+        sendTime.reset();
+        changesDistributed.reset();
+        messagesSent.reset();
+        entriesSent.reset();
+        sendFailures.reset();
+        // 会话上下文持有自己的会话指标，只清零计数，保留登记，已登录的会话重置后继续出现在会话指标中
+        for (SessionMetrics session : sessions.values()) {
+            session.reset();
+        }
+        for (SymbolClassMetrics symbolClass : symbolClasses.values()) {
+            symbolClass.reset();
+        }
+    }
+
+    /**
+     * 会话指标，由该会话的发送线程更新（同一时刻只有一个线程发送同一会话）
+     */
+    static class SessionMetrics {
+        final SessionID sessionId;
+        final LongAdder messages = new LongAdder();
+        final LongAdder entries = new LongAdder();
+        final AtomicLong maxLagNanos = new AtomicLong();
+        volatile long lastLagNanos;             // 最近一个批次的行情到发出延迟，反映订阅者当前落后多少
+
+        SessionMetrics(SessionID sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        void recordLag(long lagNanos) {
+            lastLagNanos = lagNanos;
+            if (lagNanos > maxLagNanos.get()) {
+                maxLagNanos.set(lagNanos);
+            }
+        }
+
+        void reset() {
+            messages.reset();
+            entries.reset();
+            maxLagNanos.set(0);
+            lastLagNanos = 0;
+        }
+    }
+
+    /**
+     * 一个批次的证券类别计数：条目按所属类别计数，消息按其包含的条目类别计数，
+     * 一条消息包含多个类别的条目时每个类别各计一次；条目须按发送顺序加入
+     */
+    class SymbolClassTally {
+        private final SymbolRegistry symbolRegistry;
+        private String[] messageClasses = new String[4];    // 当前消息中已计数的类别，通常只有一两个
+        private int classCount;
+        private int currentMessage = -1;
+
+        SymbolClassTally(SymbolRegistry symbolRegistry) {
+            this.symbolRegistry = symbolRegistry;
+        }
+
+        /**
+         * @param messageIndex 条目所在消息在批次中的序号
+         */
+        void add(int symbolId, int messageIndex) {
+            if (messageIndex != currentMessage) {
+                currentMessage = messageIndex;
+                classCount = 0;
+            }
+            String symbolClass = symbolRegistry.symbolClassOf(symbolId);
+            SymbolClassMetrics classMetrics = symbolClassMetrics(symbolClass);
+            classMetrics.entries.increment();
+            for (int i = 0; i < classCount; i++) {
+                if (messageClasses[i].equals(symbolClass)) {
+                    return;
+                }
+            }
+            classMetrics.messages.increment();
+            if (classCount == messageClasses.length) {
+                messageClasses = Arrays.copyOf(messageClasses, classCount * 2);
+            }
+            messageClasses[classCount++] = symbolClass;
+        }
+    }
+
+    /**
+     * 证券类别指标：延迟直方图只由分发周期线程更新，发送计数由各发送线程累加
+     */
+    private static class SymbolClassMetrics {
+        final String name;
+        final LongAdder changes = new LongAdder();
+        final LongAdder messages = new LongAdder();
+        final LongAdder entries = new LongAdder();
+        final LatencyHistogram ingestToDistribute = new LatencyHistogram();
+
+        SymbolClassMetrics(String name) {
+            this.name = name;
+        }
+
+        void reset() {
+            changes.reset();
+            messages.reset();
+            entries.reset();
+            ingestToDistribute.reset();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * 行情分发指标的JMX接口，延迟单位均为微秒
+ */
+public interface MarketDataMetricsMBean {
+    long getChangesDistributed();
+
+    long getMessagesSent();
+
+    long getEntriesSent();
+
+    long getSendFailures();
+
+    long getCycleTimeP50Micros();
+
+    long getCycleTimeP99Micros();
+
+    long getCycleTimeMaxMicros();
+
+    long getIngestToDistributeP50Micros();
+
+    long getIngestToDistributeP99Micros();
+
+    long getTickToWireP50Micros();
+
+    long getTickToWireP99Micros();
+
+    long getTickToWireP999Micros();
+
+    long getTickToWireMaxMicros();
+
+    long getSendTimeP99Micros();
+
+    long getSendTimeMaxMicros();
+
+    int getSessionCount();
+
+    /**
+     * 出站发送线程因编码或发送出错而丢弃的批次数
+     */
+    long getDroppedBatches();
+
+    /**
+     * 出站延迟最大的会话当前的出站延迟(毫秒)，用于行情延迟告警
+     */
+    long getMaxSessionLagMillis();
+
+    /**
+     * 每个会话一行：消息数、条目数、最近和最大的行情到发出延迟、出站队列深度和延迟
+     */
+    String[] getSessionStatistics();
+
+    /**
+     * 每个证券类别一行：分发的变动数、发送的消息数和条目数，以及行情从接入到分发的延迟
+     */
+    String[] getSymbolClassStatistics();
+
+    /**
+     * 所有指标的文本摘要
+     */
+    String getSummary();
+
+    /**
+     * 清零所有直方图和计数器
+     */
+    void reset();
+}
@@ -0,0 +1,138 @@
+import quickfix.field.MDUpdateType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 市场数据请求参数，从MarketDataRequest中解析得到
+ */
+public class MarketDataRequestParams {
+    private final List<String> symbols;         // 请求的证券列表，与下面的模式都为空表示全市场
+    private final List<String> symbolPrefixes;  // 证券代码前缀模式(请求中的EUR/*记为EUR/)
+    private final List<String> symbolClasses;   // 证券类别模式(请求中的SecurityType)
+    private final List<Character> entryTypes;   // 请求的数据类型(BID/ASK等)
+    private final long updateIntervalMillis;    // 更新间隔(毫秒)
+    private final int updateType;               // 更新方式(MDUpdateType)：全量刷新或增量刷新
+    private final int marketDepth;              // 行情深度(MarketDepth)：0表示全部档位，1表示最优价
+    private final long replayFromSequence;      // 客户端已收到的最后序号(RptSeq)，-1表示不补发
+
+    public MarketDataRequestParams(List<String> symbols, List<Character> entryTypes,
+                                   long updateIntervalMillis, int updateType) {
+        this(symbols, entryTypes, updateIntervalMillis, updateType, 1);
+    }
+
+    public MarketDataRequestParams(List<String> symbols, List<Character> entryTypes,
+                                   long updateIntervalMillis, int updateType, int marketDepth) {
+        this(symbols, entryTypes, updateIntervalMillis, updateType, marketDepth, -1);
+    }
+
+    public MarketDataRequestParams(List<String> symbols, List<Character> entryTypes, long updateIntervalMillis,
+                                   int updateType, int marketDepth, long replayFromSequence) {
+        this(symbols, Collections.emptyList(), Collections.emptyList(), entryTypes, updateIntervalMillis, updateType,
+            marketDepth, replayFromSequence);
+    }
+
+    public MarketDataRequestParams(List<String> symbols, List<String> symbolPrefixes, List<String> symbolClasses,
+                                   List<Character> entryTypes, long updateIntervalMillis, int updateType,
+                                   int marketDepth, long replayFromSequence) {
+        this.symbols = symbols;
+        this.symbolPrefixes = symbolPrefixes;
+        this.symbolClasses = symbolClasses;
+        this.entryTypes = entryTypes;
+        this.updateIntervalMillis = updateIntervalMillis;
+        this.updateType = updateType;
+        this.marketDepth = marketDepth;
+        this.replayFromSequence = replayFromSequence;
+    }
+
+    public List<String> getSymbols() {
+        return symbols;
+    }
+
+    public List<String> getSymbolPrefixes() {
+        return symbolPrefixes;
+    }
+
+    public List<String> getSymbolClasses() {
+        return symbolClasses;
+    }
+
+    public List<Character> getEntryTypes() {
+        return entryTypes;
+    }
+
+    public long getUpdateIntervalMillis() {
+        return updateIntervalMillis;
+    }
+
+    public int getUpdateType() {
+        return updateType;
+    }
+
+    public int getMarketDepth() {
+        return marketDepth;
+    }
+
+    public long getReplayFromSequence() {
+        return replayFromSequence;
+    }
+
+    /**
+     * 是否请求从行情日志补发断线期间的变动
+     */
+    public boolean isReplayRequested() {
+        return replayFromSequence >= 0;
+    }
+
+    /**
+     * 是否请求多档深度行情(MarketDepth为0或大于1)，有订单簿的证券买卖价由订单簿提供
+     */
+    public boolean isDepthOfBook() {
+        return marketDepth != 1;
+    }
+
+    /**
+     * 是否请求全市场数据
+     */
+    public boolean isAllSymbols() {
+        return symbols.isEmpty() && !hasPatterns();
+    }
+
+    /**
+     * 是否含前缀或类别模式
+     */
+    public boolean hasPatterns() {
+        return !symbolPrefixes.isEmpty() || !symbolClasses.isEmpty();
+    }
+
+    /**
+     * 将模式展开为当前已注册的匹配证券，与明确请求的证券合并去重，用于生成快照
+     * 展开后没有任何证券时返回null（不能用空列表表示，空列表意味着全市场）
+     */
+    public MarketDataRequestParams resolvePatterns(SymbolRegistry symbolRegistry) {
+        if (!hasPatterns()) {
+            return this;
+        }
+        Set<String> resolved = new LinkedHashSet<>(symbols);
+        for (String prefix : symbolPrefixes) {
+            resolved.addAll(symbolRegistry.getSymbolsByPrefix(prefix));
+        }
+        for (String symbolClass : symbolClasses) {
+            resolved.addAll(symbolRegistry.getSymbolsByClass(symbolClass));
+        }
+        if (resolved.isEmpty()) {
+            return null;
+        }
+        return new MarketDataRequestParams(new ArrayList<>(resolved), entryTypes, updateIntervalMillis, updateType,
+            marketDepth, replayFromSequence);
+    }
+
+    /**
+     * 是否请求增量刷新
+     */
+    public boolean isIncrementalRefresh() {
+        return updateType == MDUpdateType.INCREMENTAL_REFRESH;
+    }
+}
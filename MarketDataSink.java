@@ -0,0 +1,40 @@
+import java.util.Collection;
+
+/**
+ * 行情接入接口，接收归一化后的行情tick
+ * 行情源轮询、采集回放等都通过该接口写入，下游不关心数据来自哪里
+ */
+public interface MarketDataSink {
+
+    /**
+     * 接收一条行情：某证券某数据类型的最新价格和数量
+     */
+    void onMarketData(String symbol, char entryType, double price, double size, long updateTime);
+
+    /**
+     * 删除某证券某数据类型的条目（如证券停牌、报价撤销）
+     * 转发行情的实现须同样转发删除；默认忽略并记录日志，不会因一条删除使接入通道出错
+     */
+    default void onMarketDataDelete(String symbol, char entryType, long updateTime) {
+        System.err.println(getClass().getSimpleName() + " ignored delete for " + symbol + " " + entryType);
+    }
+
+    /**
+     * 接收一条订单簿档位更新：某证券某一侧某价位的最新数量，数量不大于0表示删除该价位
+     * 转发行情的实现须同样转发档位更新；默认忽略并记录日志，只接收L1行情的下游不受影响
+     * @param side MDEntryType：BID或OFFER
+     */
+    default void onLevelUpdate(String symbol, char side, double price, double size, long updateTime) {
+        System.err.println(getClass().getSimpleName() + " ignored level update for " + symbol);
+    }
+
+    /**
+     * 接收行情源一次轮询得到的一批行情
+     */
+    default void onMarketDataBatch(Collection<MarketData> batch) {
+        for (MarketData data : batch) {
+            onMarketData(data.getSymbol(), data.getEntryType(), data.getPrice(), data.getSize(),
+                data.getUpdateTime().getTime());
+        }
+    }
+}
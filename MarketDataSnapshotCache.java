@@ -0,0 +1,125 @@
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 全市场快照缓存，按请求的数据类型组合和缓存数据版本保存已筛选的快照条目
+ * 同一版本最多构建一次，构建过程中到达的相同请求等待同一次构建结果，
+ * 开盘时大量会话同时请求全市场快照只需构建一次
+ */
+public class MarketDataSnapshotCache {
+    private final MarketDataCache cache;
+    // 数据类型组合 -> 最近一次构建（可能仍在进行中）的快照
+    private final Map<String, VersionedSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public MarketDataSnapshotCache(MarketDataCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * 获取请求对应的快照条目，全市场请求走缓存，指定证券的请求直接从最新值缓存读取
+     */
+    public List<MarketDataEntry> getSnapshot(MarketDataRequestParams params) {
+        if (params.isAllSymbols()) {
+            return getFullMarketSnapshot(params.getEntryTypes());
+        }
+        return filterByType(cache.getEntriesBySymbols(params.getSymbols()), params.getEntryTypes());
+    }
+
+    /**
+     * 将请求中的前缀和类别模式展开为当前匹配的证券，没有匹配证券时返回null
+     */
+    public MarketDataRequestParams resolvePatterns(MarketDataRequestParams params) {
+        return params.resolvePatterns(cache.getSymbolRegistry());
+    }
+
+    /**
+     * 获取全市场快照条目（已按数据类型筛选），返回的列表只读且在多个请求间共享
+     */
+    public List<MarketDataEntry> getFullMarketSnapshot(List<Character> entryTypes) {
+        String key = typeKey(entryTypes);
+        // 先读版本号再取数据，构建出的快照不早于该版本
+        long version = cache.getVersion();
+        while (true) {
+            VersionedSnapshot current = snapshots.get(key);
+            if (current != null && current.version >= version) {
+                // 已构建或正在构建同一版本，直接复用
+                return await(current);
+            }
+            VersionedSnapshot building = new VersionedSnapshot(version);
+            boolean owner = current == null
+                ? snapshots.putIfAbsent(key, building) == null
+                : snapshots.replace(key, current, building);
+            if (!owner) {
+                // 其他线程抢先开始构建，重新检查
+                continue;
+            }
+            try {
+                List<MarketDataEntry> entries = filterByType(cache.getAllEntries(), entryTypes);
+                building.future.complete(Collections.unmodifiableList(entries));
+            } catch (RuntimeException e) {
+                // 构建失败不保留，等待中的请求收到同一异常，后续请求重新构建
+                snapshots.remove(key, building);
+                building.future.completeExceptionally(e);
+            }
+            return await(building);
+        }
+    }
+
+    /**
+     * 清空已缓存的快照
+     */
+    public void clear() {
+        snapshots.clear();
+    }
+
+    private static List<MarketDataEntry> await(VersionedSnapshot snapshot) {
+        try {
+            return snapshot.future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static List<MarketDataEntry> filterByType(List<MarketDataEntry> entries, List<Character> entryTypes) {
+        List<MarketDataEntry> result = new ArrayList<>(entries.size());
+        for (MarketDataEntry entry : entries) {
+            if (entryTypes.contains(entry.getEntryType())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 数据类型组合的规范化键：去重排序后拼接，请求中类型顺序不同也命中同一快照
+     */
+    private static String typeKey(List<Character> entryTypes) {
+        char[] types = new char[entryTypes.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = entryTypes.get(i);
+        }
+        Arrays.sort(types);
+        StringBuilder key = new StringBuilder(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if (i == 0 || types[i] != types[i - 1]) {
+                key.append(types[i]);
+            }
+        }
+        return key.toString();
+    }
+
+    private static class VersionedSnapshot {
+        final long version;
+        final CompletableFuture<List<MarketDataEntry>> future = new CompletableFuture<>();
+
+        VersionedSnapshot(long version) {
+            this.version = version;
+        }
+    }
+}
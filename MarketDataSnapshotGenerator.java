@@ -1,64 +1,280 @@
 import quickfix.*;
 import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
 import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 市场数据快照生成器，负责创建和发送市场数据快照
+ * 请求只在FIX回调线程入队，由快照线程异步发送；大快照按条目区间并行构建消息，
+ * 按区间顺序依次发送，每条消息的大小按字节预算切分而不是固定条数
  */
 public class MarketDataSnapshotGenerator {
+    static final int DEFAULT_MAX_CHUNK_BYTES = 16 * 1024;
+    // 每个并行构建任务处理的条目数，条目数不超过该值的快照直接在快照线程构建
+    private static final int ENTRIES_PER_TASK = 1000;
+
+    private final MarketDataSnapshotCache snapshotCache;
+    private final OrderBookService orderBookService;
+    private final MarketDataJournal journal;           // 行情日志，为null时不支持补发
+    private final ExecutorService snapshotExecutor;     // 快照请求处理线程，负责按顺序发送
+    private final ExecutorService buildExecutor;        // 快照消息构建线程
+    private final int buildWindow;                      // 每个快照同时构建中的区间数上限，限制内存占用
+    private final int maxChunkBytes;                    // 单条快照消息中条目组的字节预算
+    private volatile SessionRegistry sessionRegistry;   // 会话注册表，用于按推送等级扣减快照消息的令牌，为null时不扣减
+
+    public MarketDataSnapshotGenerator(MarketDataSnapshotCache snapshotCache, OrderBookService orderBookService) {
+        this(snapshotCache, orderBookService, null, 4, Runtime.getRuntime().availableProcessors(),
+            DEFAULT_MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * @param snapshotThreads 同时处理的快照请求数
+     * @param buildThreads    快照消息构建线程数
+     * @param maxChunkBytes   单条消息中条目组的字节预算，单个条目超出预算时独占一条消息
+     */
+    public MarketDataSnapshotGenerator(MarketDataSnapshotCache snapshotCache, OrderBookService orderBookService,
+                                       MarketDataJournal journal, int snapshotThreads, int buildThreads,
+                                       int maxChunkBytes) {
+        this.snapshotCache = snapshotCache;
+        this.orderBookService = orderBookService;
+        this.journal = journal;
+        // 快照发送同样可能阻塞在消息存储和socket上，与出站发送使用相同的线程模式
+        this.snapshotExecutor = SenderExecutors.create(snapshotThreads);
+        this.buildExecutor = Executors.newFixedThreadPool(buildThreads);
+        this.buildWindow = buildThreads * 2;
+        this.maxChunkBytes = maxChunkBytes;
+    }
+
+    /**
+     * 设置会话注册表，之后发出的快照消息计入所属会话推送等级的令牌
+     */
+    public void setSessionRegistry(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    /**
+     * 提交快照请求，立即返回；发送失败时返回的Future以异常结束
+     * @return 快照完成后得到已发送订单簿快照的证券ID及其订单簿版本，见sendSnapshot
+     */
+    public CompletableFuture<Map<Integer, Long>> submit(SessionID sessionId, String reqId,
+                                                        MarketDataRequestParams params) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendSnapshot(sessionId, reqId, params);
+            } catch (SessionNotFound e) {
+                throw new CompletionException(e);
+            }
+        }, snapshotExecutor);
+    }
 
     /**
      * 发送市场数据快照
+     * @return 已发送订单簿快照的证券ID到快照对应的订单簿版本，订阅据此丢弃快照已包含的档位变动
      */
-    public static void sendSnapshot(SessionID sessionId, String reqId, 
-                                   MarketDataRequestParams params, MarketDataProvider provider) 
-                                   throws SessionNotFound, FieldNotFound {
-        
-        // 根据请求参数获取相应的市场数据
-        List<MarketData> marketDataList = params.isAllSymbols() ? 
-            provider.getAllMarketData() : 
-            provider.getMarketDataBySymbols(params.getSymbols());
-        
+    public Map<Integer, Long> sendSnapshot(SessionID sessionId, String reqId, MarketDataRequestParams params)
+                                           throws SessionNotFound {
+
+        // 模式请求按当前已上市的匹配证券生成快照，之后上市的证券由订阅的模式匹配推送
+        if (params.hasPatterns()) {
+            params = snapshotCache.resolvePatterns(params);
+            if (params == null) {
+                sendEmptySnapshot(sessionId, reqId);
+                return Collections.emptyMap();
+            }
+        }
+
+        // 增量订阅携带了已收到的序号且日志仍保留之后的全部记录时，顺序读取日志补发，不再发送快照
+        if (canReplay(params)) {
+            sendReplay(sessionId, reqId, params);
+            return Collections.emptyMap();
+        }
+
+        // 深度请求中有订单簿的证券，买卖价来自订单簿，每个证券一条前N档快照；
+        // 其余数据类型以及没有档位行情源的证券仍从缓存获取最优价
+        Map<Integer, Long> bookVersions = params.isDepthOfBook()
+            ? sendBookSnapshots(sessionId, reqId, params) : Collections.emptyMap();
+
+        // 根据请求参数获取已按数据类型筛选的快照条目，全市场快照在同一数据版本内共享
+        List<MarketDataEntry> marketDataList = params.getEntryTypes().isEmpty() ?
+            Collections.emptyList() :
+            snapshotCache.getSnapshot(params);
+        if (!bookVersions.isEmpty()) {
+            marketDataList = withoutBookedSides(marketDataList, bookVersions);
+        }
+
         if (marketDataList.isEmpty()) {
-            sendEmptySnapshot(sessionId, reqId);
-            return;
-        }
-        
-        // 分批发送快照数据，每批最多50条记录
-        MarketDataSnapshotFullRefresh snapshot = createNewSnapshot(reqId);
-        int count = 0;
-        
-        for (MarketData data : marketDataList) {
-            // 检查是否符合订阅的数据类型
-            if (!params.getEntryTypes().contains(data.getEntryType())) {
-                continue;
+            if (bookVersions.isEmpty()) {
+                sendEmptySnapshot(sessionId, reqId);
+            }
+            return bookVersions;
+        }
+
+        if (marketDataList.size() <= ENTRIES_PER_TASK) {
+            sendAll(buildChunks(marketDataList, reqId), sessionId);
+            return bookVersions;
+        }
+
+        // 按区间并行构建，按区间顺序发送；同时构建的区间数有上限，先完成的区间先发送
+        Deque<CompletableFuture<List<MarketDataSnapshotFullRefresh>>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < marketDataList.size() || !pending.isEmpty()) {
+                while (next < marketDataList.size() && pending.size() < buildWindow) {
+                    List<MarketDataEntry> range =
+                        marketDataList.subList(next, Math.min(next + ENTRIES_PER_TASK, marketDataList.size()));
+                    pending.addLast(CompletableFuture.supplyAsync(() -> buildChunks(range, reqId), buildExecutor));
+                    next += range.size();
+                }
+                sendAll(pending.removeFirst().join(), sessionId);
+            }
+        } finally {
+            // 发送失败时取消尚未开始的构建任务
+            for (CompletableFuture<List<MarketDataSnapshotFullRefresh>> future : pending) {
+                future.cancel(false);
+            }
+        }
+        return bookVersions;
+    }
+
+    private boolean canReplay(MarketDataRequestParams params) {
+        return journal != null && params.isReplayRequested() && params.isIncrementalRefresh()
+            && !params.isDepthOfBook() && params.getSymbols().size() == 1
+            && journal.canReplay(params.getSymbols().get(0), params.getReplayFromSequence());
+    }
+
+    /**
+     * 从行情日志补发请求证券自指定序号之后的变动(35=X)，每条消息最多50个条目
+     * 订阅的实时变动在补发完成后才开始推送，补发期间累积的变动可能与补发的最后几条重复，客户端按RptSeq丢弃
+     */
+    private void sendReplay(SessionID sessionId, String reqId, MarketDataRequestParams params) throws SessionNotFound {
+        List<MarketDataIncrementalRefresh> pending = new ArrayList<>(1);
+        int[] entryCount = new int[1];
+        try {
+            journal.replay(params.getSymbols().get(0), params.getReplayFromSequence(), record -> {
+                if (!params.getEntryTypes().contains(record.getEntryType())) {
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    MarketDataIncrementalRefresh message = new MarketDataIncrementalRefresh();
+                    message.set(new MDReqID(reqId));
+                    pending.add(message);
+                    entryCount[0] = 0;
+                }
+                pending.get(0).addGroup(record.toIncrementalGroup());
+                if (++entryCount[0] >= 50) {
+                    sendUnchecked(pending.remove(0), sessionId);
+                }
+            });
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SessionNotFound) {
+                throw (SessionNotFound) e.getCause();
             }
-            
-            // 添加市场数据条目
-            MarketDataSnapshotFullRefresh.NoMDEntries group = new MarketDataSnapshotFullRefresh.NoMDEntries();
-            group.set(new MDEntryType(data.getEntryType()));
-            group.set(new Symbol(data.getSymbol()));
-            group.set(new MDEntryPrice(data.getPrice()));
-            group.set(new MDEntrySize(data.getSize()));
-            group.set(new MDEntryTime(data.getUpdateTime()));
-            
-            snapshot.addGroup(group);
-            count++;
-            
-            // 每50条记录发送一次
-            if (count % 50 == 0) {
-                Session.sendToTarget(snapshot, sessionId);
+            throw e;
+        }
+        if (!pending.isEmpty()) {
+            send(pending.get(0), sessionId);
+        }
+    }
+
+    private void sendUnchecked(Message message, SessionID sessionId) {
+        try {
+            send(message, sessionId);
+        } catch (SessionNotFound e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * 发送请求证券的订单簿前N档快照，快照与其版本在订单簿的同一锁内取得
+     * @return 已发送订单簿快照的证券ID到快照对应的订单簿版本
+     */
+    private Map<Integer, Long> sendBookSnapshots(SessionID sessionId, String reqId, MarketDataRequestParams params)
+                                                 throws SessionNotFound {
+        boolean includeBids = params.getEntryTypes().contains(MDEntryType.BID);
+        boolean includeOffers = params.getEntryTypes().contains(MDEntryType.OFFER);
+        if (orderBookService == null || (!includeBids && !includeOffers)) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Long> bookVersions = new HashMap<>();
+        for (OrderBook book : orderBookService.getBooks(params.getSymbols())) {
+            OrderBookLevelChange refresh = book.toBookRefresh(reqId, params.getMarketDepth(), includeBids, includeOffers);
+            send(refresh.getBookRefresh(), sessionId);
+            bookVersions.put(book.getSymbolId(), refresh.getBookVersion());
+        }
+        return bookVersions;
+    }
+
+    /**
+     * 去掉已由订单簿快照发送的证券的买卖价条目，不修改共享的快照列表
+     */
+    private static List<MarketDataEntry> withoutBookedSides(List<MarketDataEntry> entries,
+                                                            Map<Integer, Long> bookVersions) {
+        List<MarketDataEntry> filtered = new ArrayList<>(entries.size());
+        for (MarketDataEntry entry : entries) {
+            if (!OrderBook.isBookSide(entry.getEntryType()) || !bookVersions.containsKey(entry.getSymbolId())) {
+                filtered.add(entry);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * 将条目切分为快照消息，按条目组的估算字节数累计，超出预算时开始新消息
+     */
+    List<MarketDataSnapshotFullRefresh> buildChunks(List<MarketDataEntry> entries, String reqId) {
+        List<MarketDataSnapshotFullRefresh> chunks = new ArrayList<>();
+        MarketDataSnapshotFullRefresh snapshot = null;
+        int chunkBytes = 0;
+        for (MarketDataEntry entry : entries) {
+            int entryBytes = entry.estimateGroupBytes();
+            if (snapshot != null && chunkBytes + entryBytes > maxChunkBytes) {
+                chunks.add(snapshot);
+                snapshot = null;
+            }
+            if (snapshot == null) {
                 snapshot = createNewSnapshot(reqId);
+                chunkBytes = 0;
             }
+            // 添加市场数据条目，复用缓存条目上已构建的条目组
+            snapshot.addGroup(entry.getFullRefreshGroup());
+            chunkBytes += entryBytes;
         }
-        
-        // 发送剩余记录
-        if (count % 50 != 0) {
-            Session.sendToTarget(snapshot, sessionId);
+        if (snapshot != null) {
+            chunks.add(snapshot);
+        }
+        return chunks;
+    }
+
+    private void sendAll(List<MarketDataSnapshotFullRefresh> chunks, SessionID sessionId) throws SessionNotFound {
+        for (MarketDataSnapshotFullRefresh chunk : chunks) {
+            send(chunk, sessionId);
         }
     }
-    
+
+    /**
+     * 发送一条快照消息并扣减会话推送等级的令牌；快照不等待令牌，欠账推迟该会话之后的推送
+     */
+    private void send(Message message, SessionID sessionId) throws SessionNotFound {
+        Session.sendToTarget(message, sessionId);
+        SessionRegistry registry = sessionRegistry;
+        SessionContext context = registry != null ? registry.get(sessionId) : null;
+        if (context != null && context.getDeliveryTier().isRateLimited()) {
+            context.recordDelivered(1, context.isByteLimited() ? DeliveryTier.estimateBytes(message) : 0);
+        }
+    }
+
     /**
      * 创建新的快照消息
      */
@@ -67,15 +283,29 @@ public class MarketDataSnapshotGenerator {
         snapshot.set(new MDReqID(reqId));
         return snapshot;
     }
-    
+
     /**
      * 发送空快照（当没有数据时）
      */
-    private static void sendEmptySnapshot(SessionID sessionId, String reqId) throws SessionNotFound {
+    private void sendEmptySnapshot(SessionID sessionId, String reqId) throws SessionNotFound {
         MarketDataSnapshotFullRefresh snapshot = new MarketDataSnapshotFullRefresh();
         snapshot.set(new MDReqID(reqId));
         snapshot.set(new Symbol("NO_DATA"));
-        Session.sendToTarget(snapshot, sessionId);
+        send(snapshot, sessionId);
+    }
+
+    /**
+     * 关闭快照线程池
+     */
+    public void shutdown() {
+        snapshotExecutor.shutdown();
+        try {
+            if (!snapshotExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                snapshotExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            snapshotExecutor.shutdownNow();
+        }
+        buildExecutor.shutdownNow();
     }
 }
-    
\ No newline at end of file
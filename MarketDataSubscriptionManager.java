@@ -1,60 +1,111 @@
 import quickfix.SessionID;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 订阅管理器，负责管理所有市场数据订阅
+ * 写操作（订阅、取消、会话登出）在写锁内串行执行，每次写入递增版本号；
+ * 按ID查找、会话订阅列表和分片索引的读取不加锁，读到的列表都是不可变的，迭代期间不受并发写入影响。
+ * 全部订阅快照只用于监控和诊断，版本落后时由读取方在写锁内重建，避免每次订阅变更都复制全部订阅
  */
 public class MarketDataSubscriptionManager {
-    // 订阅ID到订阅对象的映射
+    // 订阅ID到订阅对象的映射，供按ID查找
     private final Map<String, Subscription> subscriptionsById = new ConcurrentHashMap<>();
-    // 会话ID到订阅ID列表的映射，用于快速查找会话的所有订阅
-    private final Map<SessionID, List<String>> sessionSubscriptions = new ConcurrentHashMap<>();
+    // 会话ID到该会话订阅的不可变列表，写入时整体替换
+    private final Map<SessionID, List<Subscription>> sessionSubscriptions = new ConcurrentHashMap<>();
+    // 按分片划分的证券倒排索引，会话固定归属一个分片，分发时各分片只查找自己的订阅者
+    private final SubscriptionIndex[] shardIndexes;
+    private final Object writeLock = new Object();
+    // 写入版本号，只在写锁内递增
+    private volatile long version;
+    // 最近一次构建的全部订阅快照，版本落后时在读取时重建
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.emptyList());
+
+    public MarketDataSubscriptionManager() {
+        this(1);
+    }
+
+    public MarketDataSubscriptionManager(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        this.shardIndexes = new SubscriptionIndex[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardIndexes[i] = new SubscriptionIndex();
+        }
+    }
 
     /**
-     * 添加新订阅
+     * 添加新订阅，相同订阅ID的旧订阅被取消并替换
      */
     public void addSubscription(String reqId, Subscription subscription) {
-        subscriptionsById.put(reqId, subscription);
-        
-        // 更新会话订阅映射
-        sessionSubscriptions.compute(subscription.getSessionId(), (key, list) -> {
-            if (list == null) {
-                list = new ArrayList<>();
+        synchronized (writeLock) {
+            Subscription replaced = subscriptionsById.put(reqId, subscription);
+            if (replaced != null) {
+                detach(replaced);
             }
-            list.add(reqId);
-            return list;
-        });
+            indexOf(subscription).add(subscription);
+            sessionSubscriptions.merge(subscription.getSessionId(), Collections.singletonList(subscription),
+                (current, added) -> SubscriptionIndex.with(current, subscription));
+            version++;
+        }
     }
 
     /**
      * 移除订阅
      */
     public void removeSubscription(String reqId) {
-        Subscription subscription = subscriptionsById.remove(reqId);
-        if (subscription != null) {
-            // 更新会话订阅映射
-            SessionID sessionId = subscription.getSessionId();
-            sessionSubscriptions.computeIfPresent(sessionId, (key, list) -> {
-                list.remove(reqId);
-                return list.isEmpty() ? null : list;
-            });
+        synchronized (writeLock) {
+            Subscription subscription = subscriptionsById.remove(reqId);
+            if (subscription != null) {
+                detach(subscription);
+                version++;
+            }
         }
     }
 
     /**
-     * 移除指定会话的所有订阅
+     * 仅当订阅ID当前仍对应指定订阅时移除，不影响之后以相同ID替换进来的新订阅
+     */
+    public void removeSubscription(String reqId, Subscription subscription) {
+        synchronized (writeLock) {
+            if (subscriptionsById.remove(reqId, subscription)) {
+                detach(subscription);
+                version++;
+            }
+        }
+    }
+
+    /**
+     * 移除指定会话的所有订阅，只递增一次版本号
      */
     public void removeAllSubscriptions(SessionID sessionId) {
-        List<String> reqIds = sessionSubscriptions.remove(sessionId);
-        if (reqIds != null) {
-            for (String reqId : reqIds) {
-                subscriptionsById.remove(reqId);
+        synchronized (writeLock) {
+            List<Subscription> subscriptions = sessionSubscriptions.remove(sessionId);
+            if (subscriptions == null) {
+                return;
+            }
+            for (Subscription subscription : subscriptions) {
+                subscriptionsById.remove(subscription.getReqId(), subscription);
+                subscription.cancel();
+                indexOf(subscription).remove(subscription);
             }
+            version++;
         }
     }
 
+    /**
+     * 取消订阅并从索引和所属会话的列表中移除，调用方需持有写锁
+     */
+    private void detach(Subscription subscription) {
+        subscription.cancel();
+        indexOf(subscription).remove(subscription);
+        sessionSubscriptions.computeIfPresent(subscription.getSessionId(), (key, list) -> {
+            List<Subscription> remaining = SubscriptionIndex.without(list, subscription);
+            return remaining.isEmpty() ? null : remaining;
+        });
+    }
+
     /**
      * 获取指定订阅ID的订阅
      */
@@ -63,18 +114,11 @@ public class MarketDataSubscriptionManager {
     }
 
     /**
-     * 获取指定会话的所有订阅
+     * 获取指定会话的所有订阅，返回的列表不可变
      */
     public List<Subscription> getSubscriptionsForSession(SessionID sessionId) {
-        List<String> reqIds = sessionSubscriptions.get(sessionId);
-        if (reqIds == null || reqIds.isEmpty()) {
-            return Collections.emptyList();
-        }
-        
-        return reqIds.stream()
-                .map(subscriptionsById::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        List<Subscription> subscriptions = sessionSubscriptions.get(sessionId);
+        return subscriptions != null ? subscriptions : Collections.emptyList();
     }
 
     /**
@@ -86,10 +130,70 @@ public class MarketDataSubscriptionManager {
     }
 
     /**
-     * 获取所有活跃订阅
+     * 获取所有活跃订阅的不可变快照；版本未变时不加锁直接返回，
+     * 自上次构建以来有写入时在写锁内重建，会与并发的订阅变更互相等待，不要在分发热路径上调用
      */
-    public Collection<Subscription> getAllActiveSubscriptions() {
-        return subscriptionsById.values();
+    public List<Subscription> getAllActiveSubscriptions() {
+        Snapshot current = snapshot;
+        if (current.version == version) {
+            return current.subscriptions;
+        }
+        synchronized (writeLock) {
+            current = snapshot;
+            if (current.version != version) {
+                List<Subscription> subscriptions = new ArrayList<>(subscriptionsById.size());
+                for (List<Subscription> list : sessionSubscriptions.values()) {
+                    subscriptions.addAll(list);
+                }
+                current = new Snapshot(version, Collections.unmodifiableList(subscriptions));
+                snapshot = current;
+            }
+            return current.subscriptions;
+        }
+    }
+
+    /**
+     * 当前写入版本号，每次订阅变更后递增
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 分片数量
+     */
+    public int getShardCount() {
+        return shardIndexes.length;
+    }
+
+    /**
+     * 计算会话所属分片，同一会话的所有订阅固定在同一分片
+     */
+    public int shardOf(SessionID sessionId) {
+        return Math.floorMod(sessionId.hashCode(), shardIndexes.length);
+    }
+
+    /**
+     * 获取指定分片的证券倒排索引
+     */
+    public SubscriptionIndex getShardIndex(int shard) {
+        return shardIndexes[shard];
+    }
+
+    private SubscriptionIndex indexOf(Subscription subscription) {
+        return shardIndexes[shardOf(subscription.getSessionId())];
+    }
+
+    /**
+     * 全部订阅的不可变快照及其对应的版本号
+     */
+    private static class Snapshot {
+        final long version;
+        final List<Subscription> subscriptions;
+
+        Snapshot(long version, List<Subscription> subscriptions) {
+            this.version = version;
+            this.subscriptions = subscriptions;
+        }
     }
 }
-    
\ No newline at end of file
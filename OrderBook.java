@@ -0,0 +1,214 @@
+import quickfix.field.*;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 单个证券的价格档位订单簿(L2)，买卖两侧各用按价格排序的数组保存档位
+ * 最优价位于下标0，取最优价O(1)；增删档位二分查找定位后移动数组，
+ * 行情变动集中在靠近最优价的几档，需要移动的元素很少
+ */
+public class OrderBook {
+    // 订阅支持的最大档位数(MarketDepth)，删除档位时最多携带这么多档的补位数据
+    public static final int MAX_MARKET_DEPTH = 50;
+
+    private final String symbol;
+    private final int symbolId;
+    private final BookSide bids = new BookSide(true);
+    private final BookSide offers = new BookSide(false);
+    private long updateTime;                    // 最后一次变动时间
+    private long version;                       // 每次产生档位变动时递增，档位变动和快照按版本对齐
+
+    public OrderBook(String symbol, int symbolId) {
+        this.symbol = symbol;
+        this.symbolId = symbolId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    /**
+     * 是否为订单簿维护的数据类型(买/卖)
+     */
+    public static boolean isBookSide(char entryType) {
+        return entryType == MDEntryType.BID || entryType == MDEntryType.OFFER;
+    }
+
+    /**
+     * 更新一个价位的数量，数量不大于0表示删除该价位
+     * @return 对应的档位变动，价位不存在或数量未变化时返回null
+     */
+    public synchronized OrderBookLevelChange update(char side, double price, double size, long time) {
+        BookSide book = sideOf(side);
+        int index = book.indexOf(price);
+        updateTime = time;
+        if (size <= 0) {
+            if (index < 0) {
+                return null;
+            }
+            book.delete(index);
+            // 删除后从该档开始的后续档位上移，携带这些档位供较浅的订阅补齐最后一档
+            int tail = Math.max(0, Math.min(book.depth, MAX_MARKET_DEPTH) - index);
+            return OrderBookLevelChange.delete(symbol, symbolId, side, index + 1, price, time, ++version,
+                Arrays.copyOfRange(book.prices, index, index + tail),
+                Arrays.copyOfRange(book.sizes, index, index + tail));
+        }
+        if (index >= 0) {
+            if (book.sizes[index] == size) {
+                return null;
+            }
+            book.sizes[index] = size;
+            return new OrderBookLevelChange(symbol, symbolId, side, MDUpdateAction.CHANGE, index + 1, price, size,
+                time, ++version);
+        }
+        int insertAt = -index - 1;
+        book.insert(insertAt, price, size);
+        return new OrderBookLevelChange(symbol, symbolId, side, MDUpdateAction.NEW, insertAt + 1, price, size,
+            time, ++version);
+    }
+
+    /**
+     * 最优价，该侧没有档位时返回NaN
+     */
+    public synchronized double getBestPrice(char side) {
+        BookSide book = sideOf(side);
+        return book.depth > 0 ? book.prices[0] : Double.NaN;
+    }
+
+    /**
+     * 最优价上的数量，该侧没有档位时返回0
+     */
+    public synchronized double getBestSize(char side) {
+        BookSide book = sideOf(side);
+        return book.depth > 0 ? book.sizes[0] : 0;
+    }
+
+    /**
+     * 该侧的档位数
+     */
+    public synchronized int getDepth(char side) {
+        return sideOf(side).depth;
+    }
+
+    /**
+     * 当前版本，不大于该版本的档位变动都已反映在订单簿中
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * 构建前N档的订单簿快照，作为代替积压档位变动的重建点，快照与其对应的版本在同一锁内取得
+     */
+    public synchronized OrderBookLevelChange toBookRefresh(String reqId, int marketDepth,
+                                                           boolean includeBids, boolean includeOffers) {
+        return OrderBookLevelChange.bookRefresh(symbol, symbolId, updateTime, version,
+            toFullRefresh(reqId, marketDepth, includeBids, includeOffers));
+    }
+
+    /**
+     * 构建前N档的全量刷新消息(35=W)，只包含请求的一侧或两侧
+     * @param marketDepth 档位数，0表示全部档位
+     */
+    public synchronized MarketDataSnapshotFullRefresh toFullRefresh(String reqId, int marketDepth,
+                                                                    boolean includeBids, boolean includeOffers) {
+        MarketDataSnapshotFullRefresh message = new MarketDataSnapshotFullRefresh();
+        if (reqId != null) {
+            message.set(new MDReqID(reqId));
+        }
+        message.set(new Symbol(symbol));
+        if (includeBids) {
+            addLevels(message, MDEntryType.BID, bids, marketDepth);
+        }
+        if (includeOffers) {
+            addLevels(message, MDEntryType.OFFER, offers, marketDepth);
+        }
+        return message;
+    }
+
+    private void addLevels(MarketDataSnapshotFullRefresh message, char side, BookSide book, int marketDepth) {
+        Date time = new Date(updateTime);
+        for (int i = 0, n = levelCount(book, marketDepth); i < n; i++) {
+            MarketDataSnapshotFullRefresh.NoMDEntries group = new MarketDataSnapshotFullRefresh.NoMDEntries();
+            group.set(new MDEntryType(side));
+            group.set(new MDEntryPrice(book.prices[i]));
+            group.set(new MDEntrySize(book.sizes[i]));
+            group.set(new MDEntryTime(time));
+            group.set(new MDEntryPositionNo(i + 1));
+            message.addGroup(group);
+        }
+    }
+
+    private static int levelCount(BookSide book, int marketDepth) {
+        return marketDepth == 0 ? book.depth : Math.min(marketDepth, book.depth);
+    }
+
+    private BookSide sideOf(char side) {
+        if (side == MDEntryType.BID) {
+            return bids;
+        }
+        if (side == MDEntryType.OFFER) {
+            return offers;
+        }
+        throw new IllegalArgumentException("Not an order book side: " + side);
+    }
+
+    /**
+     * 订单簿的一侧，价格从优到劣排列：买方降序，卖方升序
+     */
+    private static class BookSide {
+        private final boolean descending;
+        private double[] prices = new double[16];
+        private double[] sizes = new double[16];
+        private int depth;                      // 当前档位数
+
+        BookSide(boolean descending) {
+            this.descending = descending;
+        }
+
+        /**
+         * 查找价格所在下标，不存在时返回 -(插入位置+1)
+         */
+        int indexOf(double price) {
+            int low = 0;
+            int high = depth - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                double midPrice = prices[mid];
+                if (midPrice == price) {
+                    return mid;
+                }
+                // mid处价格优于目标价格时，目标在右半部分
+                if (descending ? midPrice > price : midPrice < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void insert(int index, double price, double size) {
+            if (depth == prices.length) {
+                prices = Arrays.copyOf(prices, depth * 2);
+                sizes = Arrays.copyOf(sizes, depth * 2);
+            }
+            System.arraycopy(prices, index, prices, index + 1, depth - index);
+            System.arraycopy(sizes, index, sizes, index + 1, depth - index);
+            prices[index] = price;
+            sizes[index] = size;
+            depth++;
+        }
+
+        void delete(int index) {
+            System.arraycopy(prices, index + 1, prices, index, depth - index - 1);
+            System.arraycopy(sizes, index + 1, sizes, index, depth - index - 1);
+            depth--;
+        }
+    }
+}
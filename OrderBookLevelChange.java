@@ -0,0 +1,183 @@
+import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 订单簿档位变动，档位号(MDEntryPositionNo)从1开始，1为最优价
+ * 订阅前N档的客户端按FIX约定维护档位：新增档位后超出N档的自动丢弃，删除档位后由补位变动补齐第N档
+ */
+public class OrderBookLevelChange {
+    private static final double[] NO_LEVELS = new double[0];
+
+    private final String symbol;
+    private final int symbolId;
+    private final char side;                // MDEntryType：BID或OFFER
+    private final char updateAction;        // NEW/CHANGE/DELETE
+    private final int level;                // 变动档位，从1开始
+    private final double price;
+    private final double size;
+    private final long updateTime;
+    private final long bookVersion;         // 产生该变动后的订单簿版本
+    // 订单簿快照：订阅积压的档位变动过多时以该证券的前N档快照代替，为null表示普通档位变动
+    private final MarketDataSnapshotFullRefresh bookRefresh;
+    // 删除时：删除后从该档开始依次上移的档位，tailPrices[k]为删除后的第(level+k)档
+    private final double[] tailPrices;
+    private final double[] tailSizes;
+    private final AtomicReferenceArray<OrderBookLevelChange> shiftIns;   // 按需构建的补位变动
+    // 条目组按需构建后由所有订阅者共享
+    private volatile MarketDataIncrementalRefresh.NoMDEntries incrementalGroup;
+
+    public OrderBookLevelChange(String symbol, int symbolId, char side, char updateAction, int level,
+                                double price, double size, long updateTime, long bookVersion) {
+        this(symbol, symbolId, side, updateAction, level, price, size, updateTime, bookVersion, NO_LEVELS, NO_LEVELS,
+            null);
+    }
+
+    private OrderBookLevelChange(String symbol, int symbolId, char side, char updateAction, int level,
+                                 double price, double size, long updateTime, long bookVersion,
+                                 double[] tailPrices, double[] tailSizes, MarketDataSnapshotFullRefresh bookRefresh) {
+        this.symbol = symbol;
+        this.symbolId = symbolId;
+        this.side = side;
+        this.updateAction = updateAction;
+        this.level = level;
+        this.price = price;
+        this.size = size;
+        this.updateTime = updateTime;
+        this.bookVersion = bookVersion;
+        this.bookRefresh = bookRefresh;
+        this.tailPrices = tailPrices;
+        this.tailSizes = tailSizes;
+        this.shiftIns = tailPrices.length > 0 ? new AtomicReferenceArray<>(tailPrices.length) : null;
+    }
+
+    /**
+     * 创建删除档位的变动
+     * @param tailPrices 删除后从被删档位开始的各档价格
+     * @param tailSizes  删除后从被删档位开始的各档数量
+     */
+    static OrderBookLevelChange delete(String symbol, int symbolId, char side, int level, double price,
+                                       long updateTime, long bookVersion, double[] tailPrices, double[] tailSizes) {
+        return new OrderBookLevelChange(symbol, symbolId, side, MDUpdateAction.DELETE, level, price, 0, updateTime,
+            bookVersion, tailPrices, tailSizes, null);
+    }
+
+    /**
+     * 创建订单簿快照，代替该证券版本不大于bookVersion的全部档位变动
+     */
+    static OrderBookLevelChange bookRefresh(String symbol, int symbolId, long updateTime, long bookVersion,
+                                            MarketDataSnapshotFullRefresh message) {
+        return new OrderBookLevelChange(symbol, symbolId, (char) 0, MDUpdateAction.NEW, 0, 0, 0, updateTime,
+            bookVersion, NO_LEVELS, NO_LEVELS, message);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getSymbolId() {
+        return symbolId;
+    }
+
+    public char getSide() {
+        return side;
+    }
+
+    public char getUpdateAction() {
+        return updateAction;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public long getBookVersion() {
+        return bookVersion;
+    }
+
+    /**
+     * 是否为代替积压档位变动的订单簿快照
+     */
+    public boolean isBookRefresh() {
+        return bookRefresh != null;
+    }
+
+    /**
+     * 订单簿快照消息(35=W)，普通档位变动返回null
+     */
+    public MarketDataSnapshotFullRefresh getBookRefresh() {
+        return bookRefresh;
+    }
+
+    public boolean isDelete() {
+        return updateAction == MDUpdateAction.DELETE;
+    }
+
+    /**
+     * 对订阅前N档的客户端是否可见
+     * @param marketDepth 订阅档位数，0表示全部档位
+     */
+    public boolean isVisibleAt(int marketDepth) {
+        return marketDepth == 0 || level <= marketDepth;
+    }
+
+    /**
+     * 删除档位后，订阅前N档的客户端需要补上的第N档（即删除前的第N+1档），没有可补的档位时返回null
+     * @param marketDepth 订阅档位数，0表示全部档位（不需要补位）
+     */
+    public OrderBookLevelChange getShiftIn(int marketDepth) {
+        int index = marketDepth - level;
+        if (!isDelete() || marketDepth == 0 || index < 0 || index >= tailPrices.length) {
+            return null;
+        }
+        OrderBookLevelChange shiftIn = shiftIns.get(index);
+        if (shiftIn == null) {
+            shiftIn = new OrderBookLevelChange(symbol, symbolId, side, MDUpdateAction.NEW, marketDepth,
+                tailPrices[index], tailSizes[index], updateTime, bookVersion);
+            shiftIns.set(index, shiftIn);
+        }
+        return shiftIn;
+    }
+
+    /**
+     * 获取增量刷新(35=X)使用的条目组
+     */
+    public MarketDataIncrementalRefresh.NoMDEntries getIncrementalGroup() {
+        MarketDataIncrementalRefresh.NoMDEntries group = incrementalGroup;
+        if (group == null) {
+            group = new MarketDataIncrementalRefresh.NoMDEntries();
+            group.set(new MDUpdateAction(updateAction));
+            group.set(new MDEntryType(side));
+            group.set(new Symbol(symbol));
+            group.set(new MDEntryPrice(price));
+            if (!isDelete()) {
+                group.set(new MDEntrySize(size));
+                group.set(new MDEntryTime(new Date(updateTime)));
+            }
+            group.set(new MDEntryPositionNo(level));
+            incrementalGroup = group;
+        }
+        return group;
+    }
+
+    /**
+     * 估算增量条目组编码后的字节数，见MarketDataEntry.estimateGroupBytes
+     */
+    public int estimateGroupBytes() {
+        return MarketDataEntry.ESTIMATED_GROUP_BYTES + symbol.length();
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 深度行情服务，按证券维护L2订单簿，并记录档位变动供分发器推送给深度订阅者
+ */
+public class OrderBookService {
+    private final SymbolRegistry symbolRegistry;
+    private final Map<String, OrderBook> books = new ConcurrentHashMap<>();
+    // 自上次分发以来的档位变动，同一证券的变动保持发生顺序
+    private final Queue<OrderBookLevelChange> pendingChanges = new ConcurrentLinkedQueue<>();
+
+    public OrderBookService(SymbolRegistry symbolRegistry) {
+        this.symbolRegistry = symbolRegistry;
+    }
+
+    /**
+     * 更新一个价位的数量，数量不大于0表示删除该价位
+     */
+    public void applyLevelUpdate(String symbol, char side, double price, double size) {
+        applyLevelUpdate(symbol, side, price, size, System.currentTimeMillis());
+    }
+
+    /**
+     * 按行情源给出的更新时间更新一个价位，由接入管道经MarketDataCache.onLevelUpdate调用
+     */
+    public void applyLevelUpdate(String symbol, char side, double price, double size, long updateTime) {
+        OrderBook book = books.computeIfAbsent(symbol, key -> new OrderBook(key, symbolRegistry.intern(key)));
+        // 在订单簿锁内入队，保证同一证券的档位变动按发生顺序分发
+        synchronized (book) {
+            OrderBookLevelChange change = book.update(side, price, size, updateTime);
+            if (change != null) {
+                pendingChanges.add(change);
+            }
+        }
+    }
+
+    /**
+     * 取出并清空自上次调用以来的档位变动
+     */
+    public List<OrderBookLevelChange> drainLevelChanges() {
+        if (pendingChanges.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OrderBookLevelChange> changes = new ArrayList<>();
+        OrderBookLevelChange change;
+        while ((change = pendingChanges.poll()) != null) {
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    /**
+     * 获取证券的订单簿，没有深度数据时返回null
+     */
+    public OrderBook getBook(String symbol) {
+        return books.get(symbol);
+    }
+
+    /**
+     * 获取指定证券列表的订单簿，空列表表示全市场
+     */
+    public List<OrderBook> getBooks(List<String> symbols) {
+        if (symbols.isEmpty()) {
+            return new ArrayList<>(books.values());
+        }
+        List<OrderBook> result = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            OrderBook book = books.get(symbol);
+            if (book != null) {
+                result.add(book);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,280 @@
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionNotFound;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 出站分发器，为每个会话维护有界出站队列，由少量工作线程负责实际发送
+ * 单个会话阻塞在消息存储或socket上时只影响自己的队列，不会拖慢其他会话
+ * 每个会话同一时间最多一个发送任务，保证会话内的发送顺序；
+ * 使用虚拟线程池时(见SenderExecutors)，每个会话的发送任务即一个虚拟线程
+ */
+public class OutboundDispatcher {
+    // 队列容量和慢消费者阈值的配置项及默认值
+    static final String QUEUE_CAPACITY_PROPERTY = "marketdata.outbound.queueCapacity";
+    static final String SLOW_CONSUMER_LAG_PROPERTY = "marketdata.outbound.slowConsumerLagMillis";
+    static final String DISCONNECT_LAG_PROPERTY = "marketdata.outbound.disconnectLagMillis";
+    static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    static final long DEFAULT_SLOW_CONSUMER_LAG_MILLIS = 2000;
+    static final long DEFAULT_DISCONNECT_LAG_MILLIS = 10000;
+
+    private final Map<SessionID, SessionOutboundQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final BatchSender sender;
+    private final int queueCapacity;            // 每个会话队列容量(条目数)
+    private final long slowConsumerLagMillis;   // 超过该延迟标记为慢消费者
+    private final long disconnectLagMillis;     // 超过该延迟断开会话
+    // 分发器因发送失败或慢消费者主动停用队列时的回调，由会话的持有者（分发器）关闭会话上下文和订阅
+    private volatile Consumer<SessionOutboundQueue> retiredListener;
+    // 出站队列溢出时折叠积压档位变动的回调，由持有订单簿的分发器提供
+    private volatile LevelChangeCollapser levelCollapser;
+    private final LongAdder droppedBatches = new LongAdder();   // 编码或发送出错而丢弃的批次数
+
+    /**
+     * 队列容量和慢消费者阈值从系统属性读取，未配置时使用默认值
+     */
+    public OutboundDispatcher(BatchSender sender, int workerCount) {
+        this(sender, workerCount, Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+            Long.getLong(SLOW_CONSUMER_LAG_PROPERTY, DEFAULT_SLOW_CONSUMER_LAG_MILLIS),
+            Long.getLong(DISCONNECT_LAG_PROPERTY, DEFAULT_DISCONNECT_LAG_MILLIS));
+    }
+
+    public OutboundDispatcher(BatchSender sender, int workerCount, int queueCapacity,
+                              long slowConsumerLagMillis, long disconnectLagMillis) {
+        this(sender, SenderExecutors.create(workerCount), queueCapacity, slowConsumerLagMillis, disconnectLagMillis);
+    }
+
+    /**
+     * @param workers 发送线程池，由分发器负责关闭
+     */
+    public OutboundDispatcher(BatchSender sender, ExecutorService workers, int queueCapacity,
+                              long slowConsumerLagMillis, long disconnectLagMillis) {
+        this.sender = sender;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.slowConsumerLagMillis = slowConsumerLagMillis;
+        this.disconnectLagMillis = disconnectLagMillis;
+    }
+
+    /**
+     * 设置队列停用回调：会话找不到或延迟超过断开阈值时，队列关闭后通知会话的持有者，
+     * 使会话上下文、订阅与队列同时失效，而不是上下文继续向已关闭的队列投递
+     */
+    public void setRetiredListener(Consumer<SessionOutboundQueue> retiredListener) {
+        this.retiredListener = retiredListener;
+    }
+
+    /**
+     * 设置档位变动折叠器，只影响之后打开的队列
+     */
+    public void setLevelChangeCollapser(LevelChangeCollapser levelCollapser) {
+        this.levelCollapser = levelCollapser;
+    }
+
+    /**
+     * 将订阅的更新放入所属会话的出站队列，并确保有工作线程在发送该队列
+     */
+    public void enqueue(Subscription subscription, List<MarketDataChange> changes) {
+        enqueue(subscription, changes, Collections.emptyList());
+    }
+
+    /**
+     * 将订阅的更新和档位变动放入所属会话的出站队列
+     * 只投递到会话登录时打开的队列，会话已移除（队列已关闭或不存在）时丢弃，不会为其重新创建队列
+     */
+    public void enqueue(Subscription subscription, List<MarketDataChange> changes,
+                        List<OrderBookLevelChange> levelChanges) {
+        // 已绑定会话上下文的订阅直接使用上下文持有的队列
+        SessionContext context = subscription.getSessionContext();
+        SessionOutboundQueue queue = context != null ? context.getOutboundQueue() : queues.get(subscription.getSessionId());
+        if (queue == null || !queue.offer(subscription, changes, levelChanges)) {
+            return;
+        }
+        if (queue.tryStartDraining()) {
+            workers.execute(() -> drain(queue));
+        }
+    }
+
+    /**
+     * 获取会话的出站队列，不存在或已关闭时创建（会话登录时调用）
+     */
+    public SessionOutboundQueue openQueue(SessionID sessionId) {
+        return queues.compute(sessionId, (id, queue) ->
+            queue != null && !queue.isClosed() ? queue : new SessionOutboundQueue(id, queueCapacity, levelCollapser));
+    }
+
+    /**
+     * 依次发送队列中积压的批次，同一会话的消息保持入队顺序
+     * 已取消订阅的批次不再发送；队列关闭后在当前批次之后退出；
+     * 单个批次出错时只丢弃该批次并计数，继续发送之后的批次，会话找不到时停用队列
+     */
+    private void drain(SessionOutboundQueue queue) {
+        try {
+            while (true) {
+                List<SessionOutboundQueue.OutboundBatch> batches = queue.drain();
+                if (batches.isEmpty()) {
+                    queue.stopDraining();
+                    // 释放发送权后再检查一次，避免错过并发入队的数据
+                    if (queue.isEmpty() || !queue.tryStartDraining()) {
+                        return;
+                    }
+                    continue;
+                }
+                for (SessionOutboundQueue.OutboundBatch batch : batches) {
+                    if (queue.isClosed()) {
+                        break;
+                    }
+                    if (!batch.getSubscription().isCancelled()) {
+                        sendBatch(queue, batch);
+                    }
+                }
+                queue.completeInFlight();
+            }
+        } catch (SessionNotFound e) {
+            queue.stopDraining();
+            retire(queue);
+        } catch (Exception e) {
+            queue.completeInFlight();
+            queue.stopDraining();
+            System.err.println("Error sending market data to " + queue.getSessionId() + ": " + e.getMessage());
+        }
+    }
+
+    private void sendBatch(SessionOutboundQueue queue, SessionOutboundQueue.OutboundBatch batch)
+            throws SessionNotFound {
+        try {
+            sender.send(batch.getSubscription(), batch.getChanges(), batch.getLevelChanges());
+        } catch (RuntimeException e) {
+            droppedBatches.increment();
+            SessionContext context = batch.getSubscription().getSessionContext();
+            if (context != null) {
+                context.recordSendFailure();
+            }
+            System.err.println("Dropped batch for " + batch.getSubscription().getReqId() + " to "
+                + queue.getSessionId() + ": " + e);
+        }
+    }
+
+    /**
+     * 编码或发送出错而丢弃的批次数
+     */
+    public long getDroppedBatchCount() {
+        return droppedBatches.sum();
+    }
+
+    /**
+     * 检查所有会话的队列延迟，标记慢消费者，延迟过大的会话直接断开
+     */
+    public void checkSlowConsumers() {
+        long now = System.currentTimeMillis();
+        for (SessionOutboundQueue queue : queues.values()) {
+            long lag = queue.getLagMillis(now);
+            if (lag >= disconnectLagMillis) {
+                SessionID sessionId = queue.getSessionId();
+                System.err.println("Disconnecting slow consumer " + sessionId + ", lag " + lag + "ms");
+                Session session = Session.lookupSession(sessionId);
+                if (session != null) {
+                    session.logout("Slow consumer");
+                }
+                retire(queue);
+            } else if (lag >= slowConsumerLagMillis) {
+                if (!queue.isSlowConsumer()) {
+                    System.err.println("Slow consumer detected: " + queue.getSessionId() + ", lag " + lag + "ms");
+                    queue.setSlowConsumer(true);
+                }
+            } else {
+                queue.setSlowConsumer(false);
+            }
+        }
+    }
+
+    /**
+     * 关闭并移除会话的出站队列（会话登出或断开时调用）
+     * 先关闭再移除：正在发送该队列的线程看到关闭标志后退出，之后的入队被拒绝，不会出现同一会话的第二个发送任务
+     */
+    public void removeSession(SessionID sessionId) {
+        SessionOutboundQueue queue = queues.get(sessionId);
+        if (queue != null) {
+            queue.close();
+            queues.remove(sessionId, queue);
+        }
+    }
+
+    /**
+     * 停用指定的队列实例并通知持有者；会话已重新登录（队列已被替换）时不影响新队列
+     */
+    private void retire(SessionOutboundQueue queue) {
+        queue.close();
+        queues.remove(queue.getSessionId(), queue);
+        Consumer<SessionOutboundQueue> listener = retiredListener;
+        if (listener != null) {
+            listener.accept(queue);
+        }
+    }
+
+    /**
+     * 获取所有存在出站队列的会话
+     */
+    public Set<SessionID> getSessionIds() {
+        return Collections.unmodifiableSet(queues.keySet());
+    }
+
+    /**
+     * 获取会话队列深度(条目数)
+     */
+    public int getQueueDepth(SessionID sessionId) {
+        SessionOutboundQueue queue = queues.get(sessionId);
+        return queue != null ? queue.getDepth() : 0;
+    }
+
+    /**
+     * 获取会话队列延迟(毫秒)
+     */
+    public long getLagMillis(SessionID sessionId) {
+        SessionOutboundQueue queue = queues.get(sessionId);
+        return queue != null ? queue.getLagMillis(System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * 会话是否被标记为慢消费者
+     */
+    public boolean isSlowConsumer(SessionID sessionId) {
+        SessionOutboundQueue queue = queues.get(sessionId);
+        return queue != null && queue.isSlowConsumer();
+    }
+
+    /**
+     * 关闭发送线程池
+     */
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * 批次发送接口，由分发器负责将更新编码为FIX消息并发送
+     */
+    @FunctionalInterface
+    public interface BatchSender {
+        void send(Subscription subscription, List<MarketDataChange> changes,
+                  List<OrderBookLevelChange> levelChanges) throws SessionNotFound;
+    }
+
+    /**
+     * 将出站队列中一个订阅积压的档位变动折叠为更少的变动，在入队的分发分片线程上调用
+     */
+    public interface LevelChangeCollapser {
+        List<OrderBookLevelChange> collapse(Subscription subscription, List<OrderBookLevelChange> levelChanges);
+    }
+}
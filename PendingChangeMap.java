@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 待推送变动表：以条目键(MarketDataEntry.getKey)为键的开放寻址哈希表，键不装箱
+ * 同一条目的多次变动合并为一次，取出时按条目首次出现的顺序返回
+ * 非线程安全，由持有者所在的线程访问
+ */
+public class PendingChangeMap {
+    private int[] keys;
+    private int[] slots;                        // 变动在values中的下标+1，0表示空位
+    private int mask;
+    private ArrayList<MarketDataChange> values;
+
+    public PendingChangeMap() {
+        this(16);
+    }
+
+    public PendingChangeMap(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize * 2);
+        this.keys = new int[capacity];
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.values = new ArrayList<>(expectedSize);
+    }
+
+    /**
+     * 加入一条变动，与同一条目已有的变动合并
+     */
+    public void merge(MarketDataChange change) {
+        int key = change.getEntry().getKey();
+        int index = indexOf(key);
+        int slot = slots[index];
+        if (slot != 0) {
+            values.set(slot - 1, values.get(slot - 1).merge(change));
+            return;
+        }
+        values.add(change);
+        keys[index] = key;
+        slots[index] = values.size();
+        if (values.size() * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * 按首次出现的顺序获取第index条变动，不取出
+     */
+    public MarketDataChange get(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * 取出全部变动并清空
+     */
+    public List<MarketDataChange> drain() {
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MarketDataChange> drained = values;
+        // 按插入的逆序清除：线性探测中每个键的探测链只经过比它先插入的键，逆序清除时探测链保持完整
+        for (int i = drained.size() - 1; i >= 0; i--) {
+            slots[indexOf(drained.get(i).getEntry().getKey())] = 0;
+        }
+        values = new ArrayList<>(Math.min(drained.size(), 16));
+        return drained;
+    }
+
+    /**
+     * 键所在的位置，不存在时返回应插入的空位
+     */
+    private int indexOf(int key) {
+        int index = hash(key) & mask;
+        while (slots[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * 按插入顺序重新放入更大的表，保持探测链只经过先插入的键
+     */
+    private void rehash(int capacity) {
+        keys = new int[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < values.size(); i++) {
+            int index = indexOf(values.get(i).getEntry().getKey());
+            keys[index] = values.get(i).getEntry().getKey();
+            slots[index] = i + 1;
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(int size) {
+        return Math.max(16, Integer.highestOneBit(Math.max(size, 1) - 1) << 1);
+    }
+}
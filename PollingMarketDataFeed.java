@@ -0,0 +1,92 @@
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 轮询适配器：将只支持轮询的旧行情源(MarketDataProvider)包装为推送式行情源
+ * 由单个轮询线程按固定间隔读取增量并写入sink，延迟下限为一个轮询间隔，仅用于尚未改为推送的行情源
+ */
+public class PollingMarketDataFeed implements MarketDataFeed {
+    private final String name;
+    private final MarketDataProvider provider;
+    private final long pollIntervalMillis;
+    private final String instrumentType;
+    private final String exchange;
+    private ScheduledExecutorService poller;
+
+    public PollingMarketDataFeed(String name, MarketDataProvider provider, long pollIntervalMillis) {
+        this(name, provider, pollIntervalMillis, null, null);
+    }
+
+    public PollingMarketDataFeed(String name, MarketDataProvider provider, long pollIntervalMillis,
+                                 String instrumentType) {
+        this(name, provider, pollIntervalMillis, instrumentType, null);
+    }
+
+    /**
+     * @param instrumentType 该数据源提供的证券类别(如STOCK)，为null时不分类
+     * @param exchange       该数据源的交易所，为null时不登记
+     */
+    public PollingMarketDataFeed(String name, MarketDataProvider provider, long pollIntervalMillis,
+                                 String instrumentType, String exchange) {
+        this.name = name;
+        this.provider = provider;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.instrumentType = instrumentType;
+        this.exchange = exchange;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getInstrumentType() {
+        return instrumentType;
+    }
+
+    @Override
+    public String getExchange() {
+        return exchange;
+    }
+
+    @Override
+    public synchronized void start(MarketDataSink sink) {
+        if (poller != null) {
+            throw new IllegalStateException("Feed already started: " + name);
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "feed-poller-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleAtFixedRate(() -> {
+            try {
+                List<MarketData> updates = provider.getLatestUpdates();
+                if (updates != null && !updates.isEmpty()) {
+                    sink.onMarketDataBatch(updates);
+                }
+            } catch (Exception e) {
+                System.err.println("Error polling market data feed " + name + ": " + e.getMessage());
+            }
+        }, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (poller == null) {
+            return;
+        }
+        poller.shutdown();
+        try {
+            if (!poller.awaitTermination(5, TimeUnit.SECONDS)) {
+                poller.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            poller.shutdownNow();
+        }
+        poller = null;
+    }
+}
@@ -0,0 +1,63 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 发送线程池工厂：默认使用固定数量的平台线程；
+ * 设置-Dmarketdata.sender.virtualThreads=true且运行在JDK 21+时，改为每个任务一个虚拟线程，
+ * 会话阻塞在消息存储或socket写入时只挂起自己的虚拟线程，不占用平台线程
+ * 通过反射调用JDK 21的API，在更低版本的JDK上编译和运行时自动回退到平台线程
+ */
+public final class SenderExecutors {
+    public static final String VIRTUAL_THREADS_PROPERTY = "marketdata.sender.virtualThreads";
+
+    // JDK 21+的Executors.newVirtualThreadPerTaskExecutor，不支持时为null
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private SenderExecutors() {
+    }
+
+    /**
+     * 按系统属性创建发送线程池
+     * @param platformThreads 使用平台线程时的线程数
+     */
+    public static ExecutorService create(int platformThreads) {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            if (isVirtualThreadsSupported()) {
+                return newVirtualThreadPerTaskExecutor();
+            }
+            System.err.println("Virtual threads require JDK 21+, running " + System.getProperty("java.version")
+                + "; using " + platformThreads + " platform sender threads");
+        }
+        return Executors.newFixedThreadPool(platformThreads);
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的线程池，当前JDK不支持时抛出UnsupportedOperationException
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21+");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // JDK 19/20中为预览API，未开启预览时调用会失败
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
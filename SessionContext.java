@@ -0,0 +1,232 @@
+import quickfix.Message;
+import quickfix.Session;
+import quickfix.SessionID;
+import quickfix.SessionNotFound;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话上下文：会话登录时创建，保存QuickFIX/J会话句柄和该会话的分发状态（出站队列、权限、计数），登出时关闭
+ * 订阅持有所属会话的上下文，分发和发送路径直接使用句柄，不再按SessionID查找全局会话表；
+ * 上下文关闭后该会话的所有订阅立即视为已取消
+ */
+public class SessionContext {
+    private final SessionID sessionId;
+    private final Session session;                      // 会话句柄，为null时按SessionID经QuickFIX/J查找后发送
+    private final SessionOutboundQueue outboundQueue;
+    private final MarketDataMetrics.SessionMetrics metrics;
+    private final long logonTime;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejects = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private volatile DeliveryTier tier = DeliveryTier.UNLIMITED;
+    // 推送等级的令牌桶，不限制时为null；分片线程取出变动前按估算预留，快照线程发出快照后扣减
+    private volatile TokenBucket messageTokens;
+    private volatile TokenBucket byteTokens;
+    private volatile Set<String> entitlements;          // 允许订阅的证券类别，null表示不限制
+    private volatile boolean closed;
+
+    public SessionContext(SessionID sessionId, Session session, SessionOutboundQueue outboundQueue,
+                          MarketDataMetrics.SessionMetrics metrics) {
+        this.sessionId = sessionId;
+        this.session = session;
+        this.outboundQueue = outboundQueue;
+        this.metrics = metrics;
+        this.logonTime = System.currentTimeMillis();
+    }
+
+    public SessionID getSessionId() {
+        return sessionId;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public SessionOutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    MarketDataMetrics.SessionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getLogonTime() {
+        return logonTime;
+    }
+
+    /**
+     * 会话是否仍可发送：未关闭且会话句柄仍处于登录状态
+     */
+    public boolean isActive() {
+        return !closed && (session == null || session.isLoggedOn());
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭上下文，该会话的所有订阅随之失效
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * 通过会话句柄发送消息
+     */
+    public void send(Message message) throws SessionNotFound {
+        if (session != null) {
+            session.send(message);
+        } else {
+            Session.sendToTarget(message, sessionId);
+        }
+    }
+
+    /**
+     * 设置允许订阅的证券类别，null表示不限制
+     */
+    public void setEntitlements(Set<String> symbolClasses) {
+        this.entitlements = symbolClasses != null ? Collections.unmodifiableSet(new HashSet<>(symbolClasses)) : null;
+    }
+
+    public Set<String> getEntitlements() {
+        return entitlements;
+    }
+
+    public boolean isRestricted() {
+        return entitlements != null;
+    }
+
+    /**
+     * 是否允许订阅指定类别的证券
+     */
+    public boolean isEntitled(String symbolClass) {
+        Set<String> allowed = entitlements;
+        return allowed == null || allowed.contains(symbolClass);
+    }
+
+    /**
+     * 设置推送等级，重新创建令牌桶
+     */
+    public void setDeliveryTier(DeliveryTier tier) {
+        this.messageTokens = tier.newMessageBucket();
+        this.byteTokens = tier.newByteBucket();
+        this.tier = tier;
+    }
+
+    public DeliveryTier getDeliveryTier() {
+        return tier;
+    }
+
+    /**
+     * 推送等级的合并窗口(毫秒)
+     */
+    public long getConflationWindowMillis() {
+        return tier.getConflationWindowMillis();
+    }
+
+    /**
+     * 是否按字节数限速，限速时才需要估算消息长度
+     */
+    public boolean isByteLimited() {
+        return byteTokens != null;
+    }
+
+    /**
+     * 预留一批推送的令牌，两个桶都足够时才扣减
+     * 同一会话的订阅都在同一分片线程上预留，与快照的扣减并发时各桶自身保证一致
+     * @return 是否已预留，未预留时不扣减任何令牌
+     */
+    public boolean tryReserve(int messages, long bytes) {
+        TokenBucket messageBucket = messageTokens;
+        TokenBucket byteBucket = byteTokens;
+        if (messageBucket != null && !messageBucket.tryAcquire(messages)) {
+            return false;
+        }
+        if (byteBucket != null && !byteBucket.tryAcquire(bytes)) {
+            if (messageBucket != null) {
+                messageBucket.release(messages);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 距离可以预留一批推送的令牌还需等待的时间(毫秒)，不限速时返回0
+     */
+    public long throttleDelayMillis(int messages, long bytes) {
+        TokenBucket messageBucket = messageTokens;
+        TokenBucket byteBucket = byteTokens;
+        long delay = 0;
+        if (messageBucket != null) {
+            delay = messageBucket.millisUntilAvailable(messages);
+        }
+        if (byteBucket != null) {
+            delay = Math.max(delay, byteBucket.millisUntilAvailable(bytes));
+        }
+        return delay;
+    }
+
+    /**
+     * 按发出的快照消息扣减令牌，快照不预留，余额不足时记为欠账，推迟之后的推送
+     */
+    public void recordDelivered(int messages, long bytes) {
+        TokenBucket messageBucket = messageTokens;
+        TokenBucket byteBucket = byteTokens;
+        if (messageBucket != null) {
+            messageBucket.consume(messages);
+        }
+        if (byteBucket != null) {
+            byteBucket.consume(bytes);
+        }
+    }
+
+    /**
+     * 记录一次因令牌耗尽推迟推送
+     */
+    public void recordThrottled() {
+        throttled.increment();
+    }
+
+    public void recordRequest() {
+        requests.increment();
+    }
+
+    public void recordReject() {
+        rejects.increment();
+    }
+
+    public void recordSendFailure() {
+        sendFailures.increment();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getRejectCount() {
+        return rejects.sum();
+    }
+
+    public long getSendFailureCount() {
+        return sendFailures.sum();
+    }
+
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    @Override
+    public String toString() {
+        return sessionId + " requests=" + getRequestCount() + " rejects=" + getRejectCount()
+            + " sendFailures=" + getSendFailureCount() + " tier=" + tier.getName()
+            + " throttled=" + getThrottledCount() + " queueDepth=" + outboundQueue.getDepth()
+            + (closed ? " CLOSED" : "");
+    }
+}
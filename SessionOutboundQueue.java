@@ -0,0 +1,203 @@
+import quickfix.SessionID;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 会话出站队列，缓存待发送给单个会话的更新批次
+ * 队列按条目数有界，溢出时将积压的更新按证券和数据类型合并为最新值，积压过多的档位变动折叠为订单簿快照，
+ * 而不是无限增长或丢弃
+ */
+public class SessionOutboundQueue {
+    private final SessionID sessionId;
+    private final int capacity;                         // 队列容量(条目数)，档位变动同样计入
+    private final OutboundDispatcher.LevelChangeCollapser levelCollapser;   // 档位变动折叠器，为null时不折叠
+    private final int levelChangeLimit;                 // 合并时一个订阅积压的档位变动超过该值即折叠
+    private ArrayDeque<OutboundBatch> batches = new ArrayDeque<>();
+    private int pendingEntries;                         // 队列中的条目总数
+    private long inFlightSince;                         // 正在发送批次中最早的入队时间，0表示没有在途批次
+    private long conflationCount;                       // 溢出合并次数
+    private final AtomicBoolean draining = new AtomicBoolean();  // 保证同一会话同一时刻只有一个线程发送
+    private volatile boolean slowConsumer;              // 是否已被标记为慢消费者
+    private volatile boolean closed;                    // 会话登出或断开后关闭，不再接收和发送
+
+    public SessionOutboundQueue(SessionID sessionId, int capacity) {
+        this(sessionId, capacity, null);
+    }
+
+    public SessionOutboundQueue(SessionID sessionId, int capacity,
+                                OutboundDispatcher.LevelChangeCollapser levelCollapser) {
+        this.sessionId = sessionId;
+        this.capacity = capacity;
+        this.levelCollapser = levelCollapser;
+        this.levelChangeLimit = Math.min(Subscription.MIN_LEVEL_CHANGE_LIMIT, capacity);
+    }
+
+    /**
+     * 入队一个订阅的更新批次，超出容量时合并积压数据
+     * @return 队列已关闭时返回false，批次被丢弃
+     */
+    public synchronized boolean offer(Subscription subscription, List<MarketDataChange> changes,
+                                      List<OrderBookLevelChange> levelChanges) {
+        if (closed) {
+            return false;
+        }
+        batches.addLast(new OutboundBatch(subscription, changes, levelChanges, System.currentTimeMillis()));
+        pendingEntries += changes.size() + levelChanges.size();
+        if (pendingEntries > capacity) {
+            conflate();
+        }
+        return true;
+    }
+
+    /**
+     * 取出当前所有积压批次交由发送线程处理
+     */
+    synchronized List<OutboundBatch> drain() {
+        if (closed || batches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OutboundBatch> drained = new ArrayList<>(batches);
+        inFlightSince = batches.peekFirst().getEnqueueTime();
+        batches.clear();
+        pendingEntries = 0;
+        return drained;
+    }
+
+    /**
+     * 在途批次发送完成
+     */
+    synchronized void completeInFlight() {
+        inFlightSince = 0;
+    }
+
+    /**
+     * 关闭队列并丢弃积压批次，正在发送的线程在当前批次后退出
+     */
+    synchronized void close() {
+        closed = true;
+        batches.clear();
+        pendingEntries = 0;
+        inFlightSince = 0;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    boolean tryStartDraining() {
+        return draining.compareAndSet(false, true);
+    }
+
+    void stopDraining() {
+        draining.set(false);
+    }
+
+    public synchronized boolean isEmpty() {
+        return batches.isEmpty();
+    }
+
+    public SessionID getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * 队列深度(条目数)
+     */
+    public synchronized int getDepth() {
+        return pendingEntries;
+    }
+
+    /**
+     * 队列延迟：最早一条尚未发送完成的更新已等待的毫秒数
+     */
+    public synchronized long getLagMillis(long now) {
+        long oldest = inFlightSince;
+        OutboundBatch first = batches.peekFirst();
+        if (first != null && (oldest == 0 || first.getEnqueueTime() < oldest)) {
+            oldest = first.getEnqueueTime();
+        }
+        return oldest == 0 ? 0 : now - oldest;
+    }
+
+    public synchronized long getConflationCount() {
+        return conflationCount;
+    }
+
+    public boolean isSlowConsumer() {
+        return slowConsumer;
+    }
+
+    public void setSlowConsumer(boolean slowConsumer) {
+        this.slowConsumer = slowConsumer;
+    }
+
+    /**
+     * 将积压批次按订阅合并，同一订阅下同一证券同一类型只保留最新变动
+     * 档位变动依赖档位号顺序，不能合并，按原顺序拼接；一个订阅拼接后超过上限时由折叠器折叠为每个证券一条订单簿快照，
+     * 与分发器折叠订阅中积压的档位变动相同
+     * 合并后的批次保留最早的入队时间，延迟统计不会因合并而被掩盖
+     */
+    private void conflate() {
+        long oldestEnqueueTime = batches.peekFirst().getEnqueueTime();
+        Map<Subscription, PendingChangeMap> merged = new LinkedHashMap<>();
+        Map<Subscription, List<OrderBookLevelChange>> mergedLevels = new HashMap<>();
+        for (OutboundBatch batch : batches) {
+            PendingChangeMap latest = merged.computeIfAbsent(batch.getSubscription(), key -> new PendingChangeMap());
+            for (MarketDataChange change : batch.getChanges()) {
+                latest.merge(change);
+            }
+            if (!batch.getLevelChanges().isEmpty()) {
+                mergedLevels.computeIfAbsent(batch.getSubscription(), key -> new ArrayList<>())
+                        .addAll(batch.getLevelChanges());
+            }
+        }
+
+        batches = new ArrayDeque<>(merged.size());
+        pendingEntries = 0;
+        for (Map.Entry<Subscription, PendingChangeMap> entry : merged.entrySet()) {
+            List<MarketDataChange> changes = entry.getValue().drain();
+            List<OrderBookLevelChange> levelChanges =
+                mergedLevels.getOrDefault(entry.getKey(), Collections.emptyList());
+            if (levelCollapser != null && levelChanges.size() > levelChangeLimit) {
+                levelChanges = levelCollapser.collapse(entry.getKey(), levelChanges);
+            }
+            batches.addLast(new OutboundBatch(entry.getKey(), changes, levelChanges, oldestEnqueueTime));
+            pendingEntries += changes.size() + levelChanges.size();
+        }
+        conflationCount++;
+    }
+
+    /**
+     * 出站批次：一个订阅在一个分发周期内的更新
+     */
+    static class OutboundBatch {
+        private final Subscription subscription;
+        private final List<MarketDataChange> changes;
+        private final List<OrderBookLevelChange> levelChanges;
+        private final long enqueueTime;
+
+        OutboundBatch(Subscription subscription, List<MarketDataChange> changes,
+                      List<OrderBookLevelChange> levelChanges, long enqueueTime) {
+            this.subscription = subscription;
+            this.changes = changes;
+            this.levelChanges = levelChanges;
+            this.enqueueTime = enqueueTime;
+        }
+
+        Subscription getSubscription() {
+            return subscription;
+        }
+
+        List<MarketDataChange> getChanges() {
+            return changes;
+        }
+
+        List<OrderBookLevelChange> getLevelChanges() {
+            return levelChanges;
+        }
+
+        long getEnqueueTime() {
+            return enqueueTime;
+        }
+    }
+}
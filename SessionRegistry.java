@@ -0,0 +1,47 @@
+import quickfix.SessionID;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话注册表，由onLogon/onLogout维护，保存当前登录的各会话上下文
+ * 只在会话生命周期事件和处理请求时查找，分发路径通过订阅持有的上下文直接访问会话
+ */
+public class SessionRegistry {
+    private final Map<SessionID, SessionContext> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 登记会话上下文，同一会话重复登录时关闭旧的上下文
+     */
+    public void register(SessionContext context) {
+        SessionContext previous = sessions.put(context.getSessionId(), context);
+        if (previous != null && previous != context) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 移除并关闭会话上下文，该会话的所有订阅随之失效
+     * @return 移除的上下文，会话未登记时返回null
+     */
+    public SessionContext unregister(SessionID sessionId) {
+        SessionContext context = sessions.remove(sessionId);
+        if (context != null) {
+            context.close();
+        }
+        return context;
+    }
+
+    public SessionContext get(SessionID sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public Collection<SessionContext> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
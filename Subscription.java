@@ -1,42 +1,175 @@
 import quickfix.SessionID;
+import quickfix.field.MDUpdateType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 订阅实体类，保存订阅的详细信息
  */
 public class Subscription {
+    // 待推送档位变动的最小上限，折叠后上限为折叠结果的两倍，避免每次变动都折叠
+    static final int MIN_LEVEL_CHANGE_LIMIT = OrderBook.MAX_MARKET_DEPTH * 4;
+
+    private final String reqId;                 // 订阅请求ID(MDReqID)
     private final SessionID sessionId;          // 客户端会话ID
-    private final List<String> symbols;         // 订阅的证券列表，空表示全市场
-    private final List<Character> entryTypes;   // 订阅的数据类型(BID/ASK等)
-    private final int updateFrequency;          // 更新频率(秒)
+    private final int[] symbolIds;              // 订阅的证券ID(升序，见SymbolRegistry)，与下面的模式都为空表示全市场
+    private final List<String> symbolPrefixes;  // 证券代码前缀模式(EUR/*记为EUR/)，之后上市的匹配证券自动加入
+    private final List<String> symbolClasses;   // 证券类别(工具类型)模式，该类别的所有证券，含之后上市的
+    private final BitSet symbolBits;            // 证券ID位图，仅在不大于ID数组时使用，否则为null
+    private final long entryTypeMaskLow;        // 订阅的数据类型(BID/ASK等)位掩码，按ASCII码0-63
+    private final long entryTypeMaskHigh;       // 订阅的数据类型位掩码，按ASCII码64-127
+    private final long updateIntervalMillis;    // 更新间隔(毫秒)，0表示有变动即推送
+    private final int updateType;               // 更新方式(MDUpdateType)：全量刷新或增量刷新
+    private final int marketDepth;              // 行情深度(MarketDepth)：0表示全部档位，1表示最优价
     private final long subscribeTime;           // 订阅时间戳
+    private SessionContext sessionContext;      // 所属会话的上下文，加入订阅管理器前绑定；为null时按SessionID查找会话
     private long lastUpdateTime;                // 最后一次推送时间
+    // 以下状态只由订阅所属的分发分片线程访问
+    private final PendingChangeMap pendingChanges = new PendingChangeMap();          // 待推送的变动，同一条目只保留最新值
+    private List<OrderBookLevelChange> pendingLevelChanges = new ArrayList<>();     // 待推送的档位变动，按发生顺序保存不合并
+    private final BitSet pendingBookSymbols = new BitSet();    // 全量深度订阅：有待推送档位变动的证券，每个证券只保留一条
+    private Map<Integer, Long> refreshedBookVersions;          // 增量深度订阅：积压档位变动已折叠为快照的证券及快照版本
+    private int levelChangeLimit = MIN_LEVEL_CHANGE_LIMIT;     // 待推送档位变动的上限，超过时折叠为订单簿快照
+    private boolean scheduled;                  // 是否已在时间轮中等待到期
+    private volatile boolean cancelled;         // 订阅是否已被取消
+    private volatile boolean awaitingSnapshot;  // 初始快照尚未发送完成，期间的变动留在订阅中不推送
+    // 初始快照中订单簿的证券ID及版本，由快照线程写入，分发分片线程取走后丢弃快照已包含的档位变动
+    private volatile Map<Integer, Long> snapshotBookVersions;
 
-    public Subscription(SessionID sessionId, List<String> symbols, 
+    public Subscription(SessionID sessionId, int[] symbolIds,
                        List<Character> entryTypes, int updateFrequency, long subscribeTime) {
+        this(null, sessionId, symbolIds, entryTypes, updateFrequency * 1000L, MDUpdateType.FULL_REFRESH, subscribeTime);
+    }
+
+    public Subscription(String reqId, SessionID sessionId, int[] symbolIds,
+                       List<Character> entryTypes, long updateIntervalMillis, int updateType, long subscribeTime) {
+        this(reqId, sessionId, symbolIds, entryTypes, updateIntervalMillis, updateType, 1, subscribeTime);
+    }
+
+    public Subscription(String reqId, SessionID sessionId, int[] symbolIds, List<Character> entryTypes,
+                       long updateIntervalMillis, int updateType, int marketDepth, long subscribeTime) {
+        this(reqId, sessionId, symbolIds, Collections.emptyList(), Collections.emptyList(), entryTypes,
+            updateIntervalMillis, updateType, marketDepth, subscribeTime);
+    }
+
+    /**
+     * @param symbolPrefixes 证券代码前缀模式
+     * @param symbolClasses  证券类别模式
+     */
+    public Subscription(String reqId, SessionID sessionId, int[] symbolIds, List<String> symbolPrefixes,
+                       List<String> symbolClasses, List<Character> entryTypes, long updateIntervalMillis,
+                       int updateType, int marketDepth, long subscribeTime) {
+        this.reqId = reqId;
         this.sessionId = sessionId;
-        this.symbols = symbols;
-        this.entryTypes = entryTypes;
-        this.updateFrequency = updateFrequency;
+        this.symbolIds = Arrays.stream(symbolIds).distinct().sorted().toArray();
+        this.symbolPrefixes = Collections.unmodifiableList(new ArrayList<>(symbolPrefixes));
+        this.symbolClasses = Collections.unmodifiableList(new ArrayList<>(symbolClasses));
+        this.symbolBits = toBitsIfCompact(this.symbolIds);
+        long low = 0;
+        long high = 0;
+        for (char type : entryTypes) {
+            if (type < 64) {
+                low |= 1L << type;
+            } else if (type < 128) {
+                high |= 1L << (type - 64);
+            }
+        }
+        this.entryTypeMaskLow = low;
+        this.entryTypeMaskHigh = high;
+        this.updateIntervalMillis = updateIntervalMillis;
+        this.updateType = updateType;
+        this.marketDepth = marketDepth;
         this.subscribeTime = subscribeTime;
         this.lastUpdateTime = subscribeTime;
     }
 
     // Getter和Setter方法
+    public String getReqId() {
+        return reqId;
+    }
+
     public SessionID getSessionId() {
         return sessionId;
     }
 
-    public List<String> getSymbols() {
-        return symbols;
+    /**
+     * 绑定所属会话的上下文，须在加入订阅管理器之前调用
+     */
+    public void bindSession(SessionContext context) {
+        if (!context.getSessionId().equals(sessionId)) {
+            throw new IllegalArgumentException("Session context " + context.getSessionId()
+                + " does not own subscription of " + sessionId);
+        }
+        this.sessionContext = context;
+    }
+
+    public SessionContext getSessionContext() {
+        return sessionContext;
     }
 
-    public List<Character> getEntryTypes() {
-        return entryTypes;
+    /**
+     * 明确订阅的证券数，0表示全市场或只有模式
+     */
+    public int getSymbolCount() {
+        return symbolIds.length;
+    }
+
+    /**
+     * 第index个明确订阅的证券ID，按ID升序；与getSymbolCount配合遍历，不复制数组
+     */
+    public int getSymbolId(int index) {
+        return symbolIds[index];
+    }
+
+    public boolean isWholeMarket() {
+        return symbolIds.length == 0 && !hasPatterns();
     }
 
-    public int getUpdateFrequency() {
-        return updateFrequency;
+    public List<String> getSymbolPrefixes() {
+        return symbolPrefixes;
+    }
+
+    public List<String> getSymbolClasses() {
+        return symbolClasses;
+    }
+
+    /**
+     * 是否含前缀或类别模式，模式匹配的证券由订阅索引的前缀树和类别索引查找
+     */
+    public boolean hasPatterns() {
+        return !symbolPrefixes.isEmpty() || !symbolClasses.isEmpty();
+    }
+
+    public long getUpdateIntervalMillis() {
+        return updateIntervalMillis;
+    }
+
+    public int getUpdateType() {
+        return updateType;
+    }
+
+    /**
+     * 是否为增量刷新订阅（初始快照后只推送NEW/CHANGE/DELETE变动）
+     */
+    public boolean isIncrementalRefresh() {
+        return updateType == MDUpdateType.INCREMENTAL_REFRESH;
+    }
+
+    public int getMarketDepth() {
+        return marketDepth;
+    }
+
+    /**
+     * 是否订阅多档深度行情(MarketDepth为0或大于1)
+     * 有订单簿的证券买卖价由档位变动推送，没有档位行情源的证券仍按缓存的最优价推送
+     */
+    public boolean isDepthOfBook() {
+        return marketDepth != 1;
     }
 
     public long getSubscribeTime() {
@@ -52,25 +185,297 @@ public class Subscription {
     }
     
     /**
-     * 检查是否需要更新（根据更新频率）
+     * 下次允许推送的时间（根据更新间隔和所属会话推送等级的合并窗口，取较大者）
+     */
+    public long getNextDueTime() {
+        SessionContext context = sessionContext;
+        long interval = context != null
+            ? Math.max(updateIntervalMillis, context.getConflationWindowMillis()) : updateIntervalMillis;
+        return lastUpdateTime + interval;
+    }
+    
+    /**
+     * 累积一条待推送变动，到期前同一条目的多次变动合并为一次
+     */
+    public void addPendingChange(MarketDataChange change) {
+        pendingChanges.merge(change);
+    }
+    
+    /**
+     * 取出并清空待推送变动
+     */
+    public List<MarketDataChange> drainPendingChanges() {
+        return pendingChanges.drain();
+    }
+    
+    /**
+     * 累积一条档位变动，只保留订阅档位数以内可见的变动；
+     * 删除档位时同时累积补齐第N档的变动。
+     * 全量订阅只推送有变动证券的前N档快照，每个证券只保留一条；
+     * 增量订阅跳过已被折叠进订单簿快照的变动(版本不大于快照版本)
+     * @return 是否有变动被累积
+     */
+    public boolean addPendingLevelChange(OrderBookLevelChange change) {
+        if (!change.isVisibleAt(marketDepth)) {
+            return false;
+        }
+        if (!isIncrementalRefresh()) {
+            if (pendingBookSymbols.get(change.getSymbolId())) {
+                return false;
+            }
+            pendingBookSymbols.set(change.getSymbolId());
+            pendingLevelChanges.add(change);
+            return true;
+        }
+        if (refreshedBookVersions != null) {
+            Long refreshedVersion = refreshedBookVersions.get(change.getSymbolId());
+            if (refreshedVersion != null) {
+                if (change.getBookVersion() <= refreshedVersion) {
+                    return false;
+                }
+                // 同一订单簿的变动按版本顺序到达，之后的变动都比快照新
+                refreshedBookVersions.remove(change.getSymbolId());
+            }
+        }
+        pendingLevelChanges.add(change);
+        OrderBookLevelChange shiftIn = change.getShiftIn(marketDepth);
+        if (shiftIn != null) {
+            pendingLevelChanges.add(shiftIn);
+        }
+        return true;
+    }
+    
+    /**
+     * 待推送的档位变动是否超过上限，超过时应折叠为订单簿快照
      */
-    public boolean needsUpdate() {
-        return System.currentTimeMillis() - lastUpdateTime >= updateFrequency * 1000L;
+    public boolean isLevelChangeLimitExceeded() {
+        return pendingLevelChanges.size() > levelChangeLimit;
     }
     
     /**
-     * 检查是否订阅了指定证券
+     * 将积压的档位变动替换为订单簿快照：每个证券一条快照代替其全部档位变动，
+     * 之后到达的版本不大于快照版本的变动被丢弃
      */
-    public boolean isSubscribedTo(String symbol) {
-        // 空列表表示订阅全市场
-        return symbols.isEmpty() || symbols.contains(symbol);
+    public void replacePendingLevelChanges(List<OrderBookLevelChange> bookRefreshes) {
+        recordBookRefreshes(bookRefreshes);
+        pendingLevelChanges = new ArrayList<>(bookRefreshes);
+        levelChangeLimit = Math.max(MIN_LEVEL_CHANGE_LIMIT, bookRefreshes.size() * 2);
+    }
+    
+    /**
+     * 记录已代替积压档位变动的订单簿快照版本，之后到达的版本不大于快照版本的变动被丢弃
+     * 快照放入出站队列时直接调用，放入订阅时见replacePendingLevelChanges
+     */
+    public void recordBookRefreshes(List<OrderBookLevelChange> bookRefreshes) {
+        if (refreshedBookVersions == null) {
+            refreshedBookVersions = new HashMap<>();
+        }
+        for (OrderBookLevelChange refresh : bookRefreshes) {
+            refreshedBookVersions.put(refresh.getSymbolId(), refresh.getBookVersion());
+        }
+    }
+
+    /**
+     * 估算取出全部待推送变动后发送的消息数，切分规则与分发器相同：
+     * 条目变动每条消息最多50个条目（全量不计已删除的条目），全量深度每个证券一条，折叠的订单簿快照各一条
+     */
+    public int estimatePendingMessages() {
+        boolean incremental = isIncrementalRefresh();
+        int messages = (pendingEntryCount(incremental) + 49) / 50;
+        if (!incremental) {
+            return messages + pendingLevelChanges.size();
+        }
+        int levelEntries = 0;
+        for (OrderBookLevelChange change : pendingLevelChanges) {
+            if (change.isBookRefresh()) {
+                messages++;
+            } else {
+                levelEntries++;
+            }
+        }
+        return messages + (levelEntries + 49) / 50;
+    }
+
+    /**
+     * 估算待推送变动编码后的字节数：条目组按estimateGroupBytes累计，订单簿快照按档位数估算，加上每条消息的固定开销
+     * @param messages 估算的消息数，见estimatePendingMessages
+     */
+    public long estimatePendingBytes(int messages) {
+        boolean incremental = isIncrementalRefresh();
+        long bytes = (long) messages * DeliveryTier.MESSAGE_OVERHEAD_BYTES;
+        for (int i = 0; i < pendingChanges.size(); i++) {
+            MarketDataChange change = pendingChanges.get(i);
+            if (incremental || !change.isDelete()) {
+                bytes += change.getEntry().estimateGroupBytes();
+            }
+        }
+        // 全量深度订阅推送前N档快照，买卖两边
+        int bookLevels = (marketDepth > 0 ? marketDepth : OrderBook.MAX_MARKET_DEPTH) * 2;
+        for (OrderBookLevelChange change : pendingLevelChanges) {
+            if (change.isBookRefresh()) {
+                bytes += DeliveryTier.estimateBytes(change.getBookRefresh()) - DeliveryTier.MESSAGE_OVERHEAD_BYTES;
+            } else if (incremental) {
+                bytes += change.estimateGroupBytes();
+            } else {
+                bytes += (long) bookLevels * change.estimateGroupBytes();
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * 待推送变动中会编码进消息的条目数，全量刷新跳过已删除的条目
+     */
+    private int pendingEntryCount(boolean incremental) {
+        if (incremental) {
+            return pendingChanges.size();
+        }
+        int entries = 0;
+        for (int i = 0; i < pendingChanges.size(); i++) {
+            if (!pendingChanges.get(i).isDelete()) {
+                entries++;
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * 取出并清空待推送的档位变动
+     */
+    public List<OrderBookLevelChange> drainPendingLevelChanges() {
+        if (pendingLevelChanges.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<OrderBookLevelChange> changes = pendingLevelChanges;
+        pendingLevelChanges = new ArrayList<>();
+        pendingBookSymbols.clear();
+        levelChangeLimit = MIN_LEVEL_CHANGE_LIMIT;
+        return changes;
+    }
+    
+    public boolean isScheduled() {
+        return scheduled;
+    }
+    
+    public void setScheduled(boolean scheduled) {
+        this.scheduled = scheduled;
+    }
+    
+    /**
+     * 暂停推送直到初始快照发送完成，须在加入订阅管理器之前调用
+     * 暂停期间的变动继续在订阅中合并，快照之后推送，客户端不会在快照之前或中途收到依赖它的增量
+     */
+    public void holdUntilSnapshotSent() {
+        this.awaitingSnapshot = true;
+    }
+
+    /**
+     * 初始快照已发送完成，恢复推送
+     */
+    public void snapshotSent() {
+        snapshotSent(Collections.emptyMap());
+    }
+
+    /**
+     * 初始快照已发送完成，恢复推送；快照中订单簿的版本在恢复前交给分发分片线程
+     * @param bookVersions 已发送订单簿快照的证券ID到快照对应的订单簿版本
+     */
+    public void snapshotSent(Map<Integer, Long> bookVersions) {
+        if (!bookVersions.isEmpty()) {
+            this.snapshotBookVersions = bookVersions;
+        }
+        this.awaitingSnapshot = false;
+    }
+
+    /**
+     * 丢弃暂停期间累积的、初始订单簿快照已包含的档位变动(版本不大于快照版本)，在分发分片线程上调用；
+     * 同一变动对客户端重复应用会使按位置的新增/删除错位。之后迟到的旧版本变动同样丢弃。
+     * 全量深度订阅推送的是最新的前N档快照，重复推送不会出错，不需要丢弃
+     */
+    public void discardSnapshotLevelChanges() {
+        Map<Integer, Long> bookVersions = snapshotBookVersions;
+        if (bookVersions == null) {
+            return;
+        }
+        snapshotBookVersions = null;
+        if (!isIncrementalRefresh()) {
+            return;
+        }
+        if (refreshedBookVersions == null) {
+            refreshedBookVersions = new HashMap<>();
+        }
+        for (Map.Entry<Integer, Long> entry : bookVersions.entrySet()) {
+            refreshedBookVersions.merge(entry.getKey(), entry.getValue(), Math::max);
+        }
+        List<OrderBookLevelChange> remaining = new ArrayList<>(pendingLevelChanges.size());
+        for (OrderBookLevelChange change : pendingLevelChanges) {
+            Long snapshotVersion = bookVersions.get(change.getSymbolId());
+            if (snapshotVersion == null || change.getBookVersion() > snapshotVersion) {
+                remaining.add(change);
+            }
+        }
+        pendingLevelChanges = remaining;
+    }
+
+    public boolean isAwaitingSnapshot() {
+        return awaitingSnapshot;
+    }
+    
+    /**
+     * 订阅被单独取消，或所属会话已登出
+     */
+    public boolean isCancelled() {
+        return cancelled || (sessionContext != null && sessionContext.isClosed());
+    }
+    
+    /**
+     * 取消订阅，已在时间轮中的订阅到期时将被丢弃
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+    
+    /**
+     * 检查是否订阅了指定证券（全市场或明确列出，不含模式匹配）
+     */
+    public boolean isSubscribedTo(int symbolId) {
+        if (symbolIds.length == 0) {
+            // 空列表且没有模式表示订阅全市场
+            return symbolPrefixes.isEmpty() && symbolClasses.isEmpty();
+        }
+        if (symbolBits != null) {
+            return symbolBits.get(symbolId);
+        }
+        return Arrays.binarySearch(symbolIds, symbolId) >= 0;
     }
     
     /**
      * 检查是否订阅了指定数据类型
      */
     public boolean isSubscribedToType(char type) {
-        return entryTypes.contains(type);
+        if (type < 64) {
+            return (entryTypeMaskLow & (1L << type)) != 0;
+        }
+        return type < 128 && (entryTypeMaskHigh & (1L << (type - 64))) != 0;
+    }
+    
+    /**
+     * 证券ID较密集时改用位图，位图占用不超过ID数组时才构建，
+     * 少量证券的订阅仍用有序数组二分查找，避免大ID导致位图过大
+     */
+    private static BitSet toBitsIfCompact(int[] sortedIds) {
+        if (sortedIds.length == 0) {
+            return null;
+        }
+        int words = (sortedIds[sortedIds.length - 1] >> 6) + 1;
+        if (words * 2 > sortedIds.length) {
+            return null;
+        }
+        BitSet bits = new BitSet(words << 6);
+        for (int id : sortedIds) {
+            bits.set(id);
+        }
+        return bits;
     }
 }
     
\ No newline at end of file
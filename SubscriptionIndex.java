@@ -0,0 +1,168 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 订阅倒排索引：证券ID到订阅者的映射，全市场订阅单独存放
+ * 分发时只需查找有变动证券的订阅者，分片分发时每个分片持有一个独立的索引
+ * 前缀模式订阅挂在证券代码前缀树上，类别模式订阅按类别存放，匹配时不遍历所有模式
+ * 订阅者列表都是不可变的，写操作(在this上同步)复制后整体替换，分发线程不加锁迭代稳定的列表
+ */
+public class SubscriptionIndex {
+    // 证券ID到订阅者列表的倒排索引，按ID直接下标访问，扩容时整体替换
+    private volatile AtomicReferenceArray<List<Subscription>> symbolSubscribers = new AtomicReferenceArray<>(1024);
+    // 全市场订阅（证券列表为空），对所有证券生效
+    private volatile List<Subscription> wholeMarketSubscribers = Collections.emptyList();
+    // 前缀模式订阅
+    private final SymbolPrefixTrie prefixSubscribers = new SymbolPrefixTrie();
+    // 类别模式订阅：证券类别 -> 订阅者列表
+    private final Map<String, List<Subscription>> classSubscribers = new ConcurrentHashMap<>();
+
+    /**
+     * 将订阅加入索引
+     */
+    public synchronized void add(Subscription subscription) {
+        if (subscription.isWholeMarket()) {
+            wholeMarketSubscribers = with(wholeMarketSubscribers, subscription);
+            return;
+        }
+        for (String prefix : subscription.getSymbolPrefixes()) {
+            prefixSubscribers.add(prefix, subscription);
+        }
+        for (String symbolClass : subscription.getSymbolClasses()) {
+            classSubscribers.put(symbolClass,
+                with(classSubscribers.getOrDefault(symbolClass, Collections.emptyList()), subscription));
+        }
+        for (int i = 0; i < subscription.getSymbolCount(); i++) {
+            int symbolId = subscription.getSymbolId(i);
+            AtomicReferenceArray<List<Subscription>> subscribers = ensureCapacity(symbolId);
+            List<Subscription> list = subscribers.get(symbolId);
+            subscribers.set(symbolId, with(list != null ? list : Collections.emptyList(), subscription));
+        }
+    }
+
+    /**
+     * 将订阅从索引中移除
+     */
+    public synchronized void remove(Subscription subscription) {
+        if (subscription.isWholeMarket()) {
+            wholeMarketSubscribers = without(wholeMarketSubscribers, subscription);
+            return;
+        }
+        for (String prefix : subscription.getSymbolPrefixes()) {
+            prefixSubscribers.remove(prefix, subscription);
+        }
+        for (String symbolClass : subscription.getSymbolClasses()) {
+            List<Subscription> list = classSubscribers.get(symbolClass);
+            if (list != null) {
+                List<Subscription> remaining = without(list, subscription);
+                if (remaining.isEmpty()) {
+                    classSubscribers.remove(symbolClass);
+                } else {
+                    classSubscribers.put(symbolClass, remaining);
+                }
+            }
+        }
+        AtomicReferenceArray<List<Subscription>> subscribers = symbolSubscribers;
+        for (int i = 0; i < subscription.getSymbolCount(); i++) {
+            int symbolId = subscription.getSymbolId(i);
+            List<Subscription> list = symbolId < subscribers.length() ? subscribers.get(symbolId) : null;
+            if (list != null) {
+                List<Subscription> remaining = without(list, subscription);
+                subscribers.set(symbolId, remaining.isEmpty() ? null : remaining);
+            }
+        }
+    }
+
+    /**
+     * 获取明确订阅了指定证券的订阅（不含全市场订阅），返回的列表不可变
+     */
+    public List<Subscription> getSymbolSubscribers(int symbolId) {
+        AtomicReferenceArray<List<Subscription>> subscribers = symbolSubscribers;
+        List<Subscription> list = symbolId < subscribers.length() ? subscribers.get(symbolId) : null;
+        return list != null ? list : Collections.emptyList();
+    }
+
+    /**
+     * 是否有前缀或类别模式订阅，没有时分发线程跳过模式匹配
+     */
+    public boolean hasPatternSubscribers() {
+        return !prefixSubscribers.isEmpty() || !classSubscribers.isEmpty();
+    }
+
+    /**
+     * 将通过模式匹配到指定证券的订阅加入result，开销与证券代码长度和匹配到的订阅数成正比；
+     * 同时明确订阅了该证券的已由倒排索引匹配，不再重复加入
+     */
+    public void collectPatternSubscribers(String symbol, int symbolId, String symbolClass, Set<Subscription> result) {
+        prefixSubscribers.collectMatches(symbol, result);
+        List<Subscription> byClass = classSubscribers.get(symbolClass);
+        if (byClass != null) {
+            result.addAll(byClass);
+        }
+        for (Iterator<Subscription> it = result.iterator(); it.hasNext(); ) {
+            if (it.next().isSubscribedTo(symbolId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 获取所有全市场订阅，返回的列表不可变
+     */
+    public List<Subscription> getWholeMarketSubscribers() {
+        return wholeMarketSubscribers;
+    }
+
+    /**
+     * 返回加入订阅后的新列表，已包含时返回原列表
+     */
+    static List<Subscription> with(List<Subscription> list, Subscription subscription) {
+        if (list.contains(subscription)) {
+            return list;
+        }
+        Subscription[] copy = list.toArray(new Subscription[list.size() + 1]);
+        copy[list.size()] = subscription;
+        return Collections.unmodifiableList(Arrays.asList(copy));
+    }
+
+    /**
+     * 返回移除订阅后的新列表，不包含时返回原列表
+     */
+    static List<Subscription> without(List<Subscription> list, Subscription subscription) {
+        int index = list.indexOf(subscription);
+        if (index < 0) {
+            return list;
+        }
+        if (list.size() == 1) {
+            return Collections.emptyList();
+        }
+        Subscription[] copy = new Subscription[list.size() - 1];
+        for (int i = 0, j = 0; i < list.size(); i++) {
+            if (i != index) {
+                copy[j++] = list.get(i);
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(copy));
+    }
+
+    /**
+     * 确保索引数组能容纳指定ID，调用方需持有this锁
+     */
+    private AtomicReferenceArray<List<Subscription>> ensureCapacity(int symbolId) {
+        AtomicReferenceArray<List<Subscription>> subscribers = symbolSubscribers;
+        if (symbolId < subscribers.length()) {
+            return subscribers;
+        }
+        int length = subscribers.length();
+        while (length <= symbolId) {
+            length *= 2;
+        }
+        AtomicReferenceArray<List<Subscription>> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < subscribers.length(); i++) {
+            grown.set(i, subscribers.get(i));
+        }
+        symbolSubscribers = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮，按订阅的下次到期时间调度推送
+ * 每个tick只处理当前槽位中的到期订阅，没有待推送数据的订阅不会进入时间轮
+ * 非线程安全，每个分发分片持有一个独立实例
+ */
+public class SubscriptionTimerWheel {
+    private final long tickMillis;          // 每个槽位对应的时间跨度(毫秒)
+    private final int mask;                 // 槽位数-1，槽位数为2的幂
+    private final List<List<Timeout>> slots;
+    private final long startTime;           // 时间轮起始时间
+    private long currentTick;               // 下一个待处理的tick序号
+    private int size;                       // 时间轮中的订阅数
+
+    /**
+     * @param tickMillis 时间精度(毫秒)
+     * @param wheelSize  槽位数，必须为2的幂
+     * @param startTime  起始时间戳
+     */
+    public SubscriptionTimerWheel(long tickMillis, int wheelSize, long startTime) {
+        if (tickMillis <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("tickMillis must be positive and wheelSize a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.startTime = startTime;
+    }
+
+    /**
+     * 在指定时间调度订阅，已过期的时间在下一个tick处理
+     */
+    public void schedule(Subscription subscription, long deadline) {
+        long deadlineTick = Math.max(Math.floorDiv(deadline - startTime + tickMillis - 1, tickMillis), currentTick);
+        slots.get((int) (deadlineTick & mask)).add(new Timeout(subscription, deadlineTick));
+        size++;
+    }
+
+    /**
+     * 推进时间轮到当前时间，依次回调到期的订阅
+     * 超过一圈的订阅留在槽位中，直到其所在轮次到来
+     */
+    public void advance(long now, Consumer<Subscription> onExpired) {
+        long targetTick = Math.floorDiv(now - startTime, tickMillis);
+        List<Subscription> expired = new ArrayList<>();
+        while (currentTick <= targetTick) {
+            List<Timeout> slot = slots.get((int) (currentTick & mask));
+            for (int i = slot.size() - 1; i >= 0; i--) {
+                Timeout timeout = slot.get(i);
+                if (timeout.deadlineTick <= currentTick) {
+                    // 与末尾元素交换后删除，避免移动数组
+                    slot.set(i, slot.get(slot.size() - 1));
+                    slot.remove(slot.size() - 1);
+                    expired.add(timeout.subscription);
+                }
+            }
+            currentTick++;
+
+            // 推进tick之后再回调，回调中重新调度的订阅不会落入已处理的槽位
+            size -= expired.size();
+            for (Subscription subscription : expired) {
+                onExpired.accept(subscription);
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * 时间轮中等待到期的订阅数
+     */
+    public int size() {
+        return size;
+    }
+
+    private static class Timeout {
+        final Subscription subscription;
+        final long deadlineTick;
+
+        Timeout(Subscription subscription, long deadlineTick) {
+            this.subscription = subscription;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 证券代码前缀树：前缀模式订阅(如EUR/*)挂在前缀对应的节点上，
+ * 匹配一个证券代码只需沿代码逐字符向下走一遍，开销与代码长度成正比，与模式订阅总数无关
+ * 写操作在this上同步，读操作不加锁（子节点是并发容器，订阅者列表不可变、写入时整体替换）
+ */
+public class SymbolPrefixTrie {
+    private final Node root = new Node();
+    private int size;                               // 挂在树上的(前缀, 订阅)数，在this上同步
+    private volatile boolean empty = true;          // 分发线程据此跳过前缀匹配
+
+    /**
+     * 将订阅挂到前缀对应的节点上，空前缀匹配所有证券
+     */
+    public synchronized void add(String prefix, Subscription subscription) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), key -> new Node());
+        }
+        List<Subscription> subscribers = SubscriptionIndex.with(node.subscribers, subscription);
+        if (subscribers != node.subscribers) {
+            node.subscribers = subscribers;
+            size++;
+            empty = false;
+        }
+    }
+
+    /**
+     * 将订阅从前缀对应的节点上移除，并剪掉不再使用的节点
+     */
+    public synchronized void remove(String prefix, Subscription subscription) {
+        if (remove(root, prefix, 0, subscription)) {
+            size--;
+            empty = size == 0;
+        }
+    }
+
+    private static boolean remove(Node node, String prefix, int depth, Subscription subscription) {
+        if (depth == prefix.length()) {
+            List<Subscription> subscribers = SubscriptionIndex.without(node.subscribers, subscription);
+            if (subscribers == node.subscribers) {
+                return false;
+            }
+            node.subscribers = subscribers;
+            return true;
+        }
+        char key = prefix.charAt(depth);
+        Node child = node.children.get(key);
+        if (child == null || !remove(child, prefix, depth + 1, subscription)) {
+            return false;
+        }
+        if (child.subscribers.isEmpty() && child.children.isEmpty()) {
+            node.children.remove(key);
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * 沿证券代码向下查找，依次访问路径上每个节点（即代码的每个前缀）的订阅
+     */
+    public void collectMatches(String symbol, Collection<Subscription> result) {
+        Node node = root;
+        result.addAll(node.subscribers);
+        for (int i = 0; i < symbol.length(); i++) {
+            node = node.children.get(symbol.charAt(i));
+            if (node == null) {
+                return;
+            }
+            List<Subscription> subscribers = node.subscribers;
+            if (!subscribers.isEmpty()) {
+                result.addAll(subscribers);
+            }
+        }
+    }
+
+    private static class Node {
+        final Map<Character, Node> children = new ConcurrentHashMap<>(4);
+        volatile List<Subscription> subscribers = Collections.emptyList();
+    }
+}
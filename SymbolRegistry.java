@@ -0,0 +1,191 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 证券代码注册表，将证券代码映射为从0开始的连续整数ID
+ * ID一经分配不再回收，可直接作为数组下标或位图位置使用
+ * 同时保存证券的类别(工具类型)和交易所，并维护按类别、按交易所的二级索引
+ */
+public class SymbolRegistry {
+    public static final String DEFAULT_SYMBOL_CLASS = "DEFAULT";
+
+    private final Map<String, Integer> idsBySymbol = new ConcurrentHashMap<>();
+    private volatile String[] symbolsById = new String[1024];   // ID到证券代码的反查表，扩容时整体替换
+    private volatile String[] symbolClassesById = new String[1024]; // ID到证券类别(工具类型，如STOCK/FOREX)，未设置为null
+    private volatile String[] exchangesById = new String[1024];     // ID到交易所，未设置为null
+    // 二级索引：类别/交易所 -> 证券代码集合，属性变化时同步维护
+    private final Map<String, Set<String>> symbolsByClass = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> symbolsByExchange = new ConcurrentHashMap<>();
+    // 按代码排序的全部证券，用于前缀查找
+    private final ConcurrentSkipListSet<String> sortedSymbols = new ConcurrentSkipListSet<>();
+    private int nextId;                                         // 下一个待分配的ID，在this上同步
+
+    /**
+     * 获取证券代码对应的ID，首次出现时分配新ID
+     */
+    public int intern(String symbol) {
+        Integer id = idsBySymbol.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = idsBySymbol.get(symbol);
+            if (id != null) {
+                return id;
+            }
+            int newId = nextId++;
+            String[] symbols = symbolsById;
+            if (newId >= symbols.length) {
+                symbols = Arrays.copyOf(symbols, symbols.length * 2);
+            }
+            symbols[newId] = symbol;
+            // 先发布反查表再发布ID，拿到ID的线程一定能反查到证券代码
+            symbolsById = symbols;
+            sortedSymbols.add(symbol);
+            idsBySymbol.put(symbol, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * 批量查询已注册证券的ID，用于客户端请求：只接受行情源已发布的证券，不为请求中的代码分配新ID
+     * @throws IllegalArgumentException 存在未注册的证券
+     */
+    public int[] idsOf(List<String> symbols) {
+        int[] ids = new int[symbols.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idOf(symbols.get(i));
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("Unknown symbol: " + symbols.get(i));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 查询证券代码对应的ID，未注册时返回-1
+     */
+    public int idOf(String symbol) {
+        Integer id = idsBySymbol.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 根据ID反查证券代码，未分配的ID返回null
+     */
+    public String symbolOf(int id) {
+        String[] symbols = symbolsById;
+        return id >= 0 && id < symbols.length ? symbols[id] : null;
+    }
+
+    /**
+     * 设置证券类别(工具类型)，用于按类别统计和索引
+     */
+    public void setSymbolClass(String symbol, String symbolClass) {
+        int id = intern(symbol);
+        synchronized (this) {
+            String[] classes = symbolClassesById;
+            if (id >= classes.length) {
+                classes = Arrays.copyOf(classes, Math.max(classes.length * 2, id + 1));
+            }
+            reindex(symbolsByClass, symbol, classes[id], symbolClass);
+            classes[id] = symbolClass;
+            symbolClassesById = classes;
+        }
+    }
+
+    /**
+     * 登记行情源声明的证券类别和交易所，为null的属性不修改
+     */
+    public void classify(String symbol, String symbolClass, String exchange) {
+        if (symbolClass != null) {
+            setSymbolClass(symbol, symbolClass);
+        }
+        if (exchange != null) {
+            setExchange(symbol, exchange);
+        }
+    }
+
+    /**
+     * 设置证券所属交易所
+     */
+    public void setExchange(String symbol, String exchange) {
+        int id = intern(symbol);
+        synchronized (this) {
+            String[] exchanges = exchangesById;
+            if (id >= exchanges.length) {
+                exchanges = Arrays.copyOf(exchanges, Math.max(exchanges.length * 2, id + 1));
+            }
+            reindex(symbolsByExchange, symbol, exchanges[id], exchange);
+            exchanges[id] = exchange;
+            exchangesById = exchanges;
+        }
+    }
+
+    /**
+     * 根据ID查询交易所，未设置时返回null
+     */
+    public String exchangeOf(int id) {
+        String[] exchanges = exchangesById;
+        return id >= 0 && id < exchanges.length ? exchanges[id] : null;
+    }
+
+    /**
+     * 以指定前缀开头的所有证券代码（只读视图，随注册表更新），开销与结果数成正比
+     */
+    public Set<String> getSymbolsByPrefix(String prefix) {
+        return Collections.unmodifiableSet(sortedSymbols.subSet(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    /**
+     * 指定类别的所有证券代码（只读视图，随注册表更新）
+     */
+    public Set<String> getSymbolsByClass(String symbolClass) {
+        Set<String> symbols = symbolsByClass.get(symbolClass);
+        return symbols != null ? Collections.unmodifiableSet(symbols) : Collections.emptySet();
+    }
+
+    /**
+     * 指定交易所的所有证券代码（只读视图，随注册表更新）
+     */
+    public Set<String> getSymbolsByExchange(String exchange) {
+        Set<String> symbols = symbolsByExchange.get(exchange);
+        return symbols != null ? Collections.unmodifiableSet(symbols) : Collections.emptySet();
+    }
+
+    /**
+     * 证券的属性从oldValue变为newValue时，将其从旧值的集合移到新值的集合
+     */
+    private static void reindex(Map<String, Set<String>> index, String symbol, String oldValue, String newValue) {
+        if (oldValue != null && !oldValue.equals(newValue)) {
+            Set<String> symbols = index.get(oldValue);
+            if (symbols != null) {
+                symbols.remove(symbol);
+            }
+        }
+        if (newValue != null) {
+            index.computeIfAbsent(newValue, key -> ConcurrentHashMap.newKeySet()).add(symbol);
+        }
+    }
+
+    /**
+     * 根据ID查询证券类别，未设置时返回DEFAULT_SYMBOL_CLASS
+     */
+    public String symbolClassOf(int id) {
+        String[] classes = symbolClassesById;
+        String symbolClass = id >= 0 && id < classes.length ? classes[id] : null;
+        return symbolClass != null ? symbolClass : DEFAULT_SYMBOL_CLASS;
+    }
+
+    /**
+     * 已注册的证券数量
+     */
+    public int size() {
+        return idsBySymbol.size();
+    }
+}
@@ -0,0 +1,107 @@
+import quickfix.field.MDUpdateAction;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 行情采集文件读取器，按采集顺序逐条读取，当前记录的字段在每次next()后被覆盖
+ */
+public class TickCaptureReader implements Closeable {
+    private final DataInputStream in;
+    private final long captureStartTime;        // 采集开始时间(毫秒时间戳)
+    private final int version;
+    // 当前记录
+    private long offsetNanos;
+    private long updateTime;
+    private double price;
+    private double size;
+    private char entryType;
+    private char updateAction;
+    private String symbol;
+
+    public TickCaptureReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        if (in.readInt() != TickCaptureWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not a tick capture file: " + file);
+        }
+        this.version = in.readInt();
+        if (version < 1 || version > TickCaptureWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported tick capture version " + version + ": " + file);
+        }
+        this.captureStartTime = in.readLong();
+    }
+
+    /**
+     * 读取下一条记录，文件结束时返回false；采集中断留下的不完整记录视为文件结束
+     */
+    public boolean next() throws IOException {
+        try {
+            offsetNanos = in.readLong();
+            updateTime = in.readLong();
+            price = in.readDouble();
+            size = in.readDouble();
+            entryType = in.readChar();
+            updateAction = version >= 2 ? in.readChar() : MDUpdateAction.CHANGE;
+            symbol = in.readUTF();
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    public long getCaptureStartTime() {
+        return captureStartTime;
+    }
+
+    /**
+     * 当前记录距采集开始的纳秒数
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getSize() {
+        return size;
+    }
+
+    public char getEntryType() {
+        return entryType;
+    }
+
+    /**
+     * 当前记录是否为删除条目
+     */
+    public boolean isDelete() {
+        return updateAction == MDUpdateAction.DELETE;
+    }
+
+    /**
+     * 当前记录是否为订单簿档位更新，数据类型为买卖方向
+     */
+    public boolean isLevelUpdate() {
+        return updateAction == TickCaptureWriter.LEVEL_UPDATE;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
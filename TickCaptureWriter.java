@@ -0,0 +1,105 @@
+import quickfix.field.MDUpdateAction;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * 行情采集：记录经过接入通道的每条行情并转发给下游，采集文件可由TickReplayDriver按原节奏回放
+ * 每个接入通道有自己的采集文件和缓冲区，只由该通道的接入线程写入，采集不加锁，各通道之间互不阻塞
+ *
+ * 文件格式：文件头 int 魔数 | int 版本 | long 采集开始时间(毫秒时间戳)
+ *          记录 long 距采集开始的纳秒数 | long 更新时间 | double 价格 | double 数量 | char 数据类型 |
+ *               char 变动方式(MDUpdateAction，删除为DELETE，其余为CHANGE；档位更新为LEVEL_UPDATE，数据类型为买卖方向) |
+ *               UTF 证券代码
+ * 版本1的记录没有变动方式，读取时视为CHANGE；版本2没有档位更新
+ */
+public class TickCaptureWriter implements MarketDataSink, Closeable {
+    static final int MAGIC = 0x5449434B;       // "TICK"
+    static final int VERSION = 3;
+    static final char LEVEL_UPDATE = 'L';       // 档位更新记录的变动方式
+
+    private final MarketDataSink delegate;
+    private final DataOutputStream out;
+    private final long startNanos;
+    private long recordCount;                   // 非写入线程读取时为近似值
+    private boolean failed;                     // 写入失败后停止采集，行情仍继续转发
+    private boolean closed;                     // 关闭后只转发不再采集
+
+    public TickCaptureWriter(Path file, MarketDataSink delegate) throws IOException {
+        this.delegate = delegate;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        this.startNanos = System.nanoTime();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+    }
+
+    @Override
+    public void onMarketData(String symbol, char entryType, double price, double size, long updateTime) {
+        record(symbol, entryType, MDUpdateAction.CHANGE, price, size, updateTime);
+        delegate.onMarketData(symbol, entryType, price, size, updateTime);
+    }
+
+    @Override
+    public void onMarketDataDelete(String symbol, char entryType, long updateTime) {
+        record(symbol, entryType, MDUpdateAction.DELETE, 0, 0, updateTime);
+        delegate.onMarketDataDelete(symbol, entryType, updateTime);
+    }
+
+    @Override
+    public void onLevelUpdate(String symbol, char side, double price, double size, long updateTime) {
+        record(symbol, side, LEVEL_UPDATE, price, size, updateTime);
+        delegate.onLevelUpdate(symbol, side, price, size, updateTime);
+    }
+
+    /**
+     * 逐条采集，整批转发给下游，保持下游的批量写入语义
+     */
+    @Override
+    public void onMarketDataBatch(Collection<MarketData> batch) {
+        for (MarketData data : batch) {
+            record(data.getSymbol(), data.getEntryType(), MDUpdateAction.CHANGE, data.getPrice(), data.getSize(),
+                data.getUpdateTime().getTime());
+        }
+        delegate.onMarketDataBatch(batch);
+    }
+
+    private void record(String symbol, char entryType, char updateAction, double price, double size,
+                        long updateTime) {
+        if (failed || closed) {
+            return;
+        }
+        try {
+            out.writeLong(System.nanoTime() - startNanos);
+            out.writeLong(updateTime);
+            out.writeDouble(price);
+            out.writeDouble(size);
+            out.writeChar(entryType);
+            out.writeChar(updateAction);
+            out.writeUTF(symbol);
+            recordCount++;
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Tick capture stopped after " + recordCount + " records: " + e.getMessage());
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * 将缓冲区中的记录写入文件并关闭，之后的行情只转发不再采集；须在通道的接入线程停止后调用
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制行情tick解码器（享元），直接读取缓冲区中的字段，不复制记录、不创建对象
+ * 证券代码经解码器内部的符号表转换为规范化的String实例，同一证券只在首次出现时创建一次
+ * 实例不是线程安全的，每个接入线程使用自己的解码器
+ */
+public class TickDecoder {
+    private ByteBuffer buffer;
+    private int limit;
+    private int offset = -BinaryTickFormat.RECORD_BYTES;    // 当前记录的起始位置
+    // 符号表：开放寻址，按证券代码字节的哈希定位
+    private String[] symbols = new String[1024];
+    private int symbolCount;
+
+    /**
+     * 绑定缓冲区中[offset, limit)范围内的记录，之后调用next()逐条读取
+     */
+    public TickDecoder wrap(ByteBuffer buffer, int offset, int limit) {
+        if (buffer.order() != BinaryTickFormat.BYTE_ORDER) {
+            throw new IllegalArgumentException("Tick buffer must be " + BinaryTickFormat.BYTE_ORDER);
+        }
+        this.buffer = buffer;
+        this.limit = limit;
+        this.offset = offset - BinaryTickFormat.RECORD_BYTES;
+        return this;
+    }
+
+    /**
+     * 移动到下一条完整记录，没有时返回false
+     */
+    public boolean next() {
+        int nextOffset = offset + BinaryTickFormat.RECORD_BYTES;
+        if (nextOffset + BinaryTickFormat.RECORD_BYTES > limit) {
+            return false;
+        }
+        offset = nextOffset;
+        return true;
+    }
+
+    /**
+     * 当前记录的起始位置
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * 最后一条完整记录之后的位置，未读完的不完整记录从这里开始
+     */
+    public int consumedTo() {
+        return offset + BinaryTickFormat.RECORD_BYTES;
+    }
+
+    public long updateTime() {
+        return buffer.getLong(offset + BinaryTickFormat.UPDATE_TIME_OFFSET);
+    }
+
+    public double price() {
+        return buffer.getDouble(offset + BinaryTickFormat.PRICE_OFFSET);
+    }
+
+    public double size() {
+        return buffer.getDouble(offset + BinaryTickFormat.SIZE_OFFSET);
+    }
+
+    public char entryType() {
+        return (char) buffer.get(offset + BinaryTickFormat.ENTRY_TYPE_OFFSET);
+    }
+
+    /**
+     * 证券代码，返回符号表中的规范实例
+     */
+    public String symbol() {
+        int length = symbolLength();
+        int base = offset + BinaryTickFormat.SYMBOL_OFFSET;
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (buffer.get(base + i) & 0xFF);
+        }
+        // 与String.hashCode一致，再扰动高位
+        int mask = symbols.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            String candidate = symbols[slot];
+            if (candidate == null) {
+                return addSymbol(slot, base, length);
+            }
+            if (matches(candidate, base, length)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 将当前位置之后的所有完整记录依次写入接入接口
+     * @return 写入的条数
+     */
+    public int decodeTo(MarketDataSink sink) {
+        int count = 0;
+        while (next()) {
+            sink.onMarketData(symbol(), entryType(), price(), size(), updateTime());
+            count++;
+        }
+        return count;
+    }
+
+    private int symbolLength() {
+        int length = buffer.get(offset + BinaryTickFormat.SYMBOL_LENGTH_OFFSET) & 0xFF;
+        if (length > BinaryTickFormat.MAX_SYMBOL_LENGTH) {
+            throw new IllegalStateException("Corrupt binary tick at " + offset + ": symbol length " + length);
+        }
+        return length;
+    }
+
+    private boolean matches(String candidate, int base, int length) {
+        if (candidate.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != (char) (buffer.get(base + i) & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String addSymbol(int slot, int base, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(base + i);
+        }
+        String symbol = new String(bytes, StandardCharsets.ISO_8859_1).intern();
+        symbols[slot] = symbol;
+        if (++symbolCount * 2 > symbols.length) {
+            rehash();
+        }
+        return symbol;
+    }
+
+    private void rehash() {
+        String[] old = symbols;
+        symbols = new String[old.length * 2];
+        int mask = symbols.length - 1;
+        for (String symbol : old) {
+            if (symbol != null) {
+                int hash = symbol.hashCode();
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (symbols[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                symbols[slot] = symbol;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制行情tick编码器（享元），在调用方提供的缓冲区中按BinaryTickFormat逐条写入，不创建对象
+ * 供模拟行情源和行情网关使用；实例不是线程安全的
+ */
+public class TickEncoder implements MarketDataSink {
+    private ByteBuffer buffer;
+    private int position;
+
+    /**
+     * 绑定缓冲区，从offset开始写入；缓冲区须为BinaryTickFormat.BYTE_ORDER
+     */
+    public TickEncoder wrap(ByteBuffer buffer, int offset) {
+        if (buffer.order() != BinaryTickFormat.BYTE_ORDER) {
+            throw new IllegalArgumentException("Tick buffer must be " + BinaryTickFormat.BYTE_ORDER);
+        }
+        this.buffer = buffer;
+        this.position = offset;
+        return this;
+    }
+
+    /**
+     * 剩余空间还能写入的记录数
+     */
+    public int remainingRecords() {
+        return (buffer.capacity() - position) / BinaryTickFormat.RECORD_BYTES;
+    }
+
+    /**
+     * 写入一条记录，空间不足时抛出IndexOutOfBoundsException
+     */
+    public void encode(String symbol, char entryType, double price, double size, long updateTime) {
+        int length = symbol.length();
+        if (length > BinaryTickFormat.MAX_SYMBOL_LENGTH) {
+            throw new IllegalArgumentException("Symbol too long for binary tick: " + symbol);
+        }
+        if (position + BinaryTickFormat.RECORD_BYTES > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("Tick buffer full at " + position);
+        }
+        int base = position;
+        buffer.putLong(base + BinaryTickFormat.UPDATE_TIME_OFFSET, updateTime);
+        buffer.putDouble(base + BinaryTickFormat.PRICE_OFFSET, price);
+        buffer.putDouble(base + BinaryTickFormat.SIZE_OFFSET, size);
+        buffer.put(base + BinaryTickFormat.ENTRY_TYPE_OFFSET, (byte) entryType);
+        buffer.put(base + BinaryTickFormat.SYMBOL_LENGTH_OFFSET, (byte) length);
+        int symbolBase = base + BinaryTickFormat.SYMBOL_OFFSET;
+        for (int i = 0; i < BinaryTickFormat.MAX_SYMBOL_LENGTH; i++) {
+            buffer.put(symbolBase + i, i < length ? (byte) symbol.charAt(i) : 0);
+        }
+        position += BinaryTickFormat.RECORD_BYTES;
+    }
+
+    /**
+     * 作为行情接入接口使用时，每条行情编码为一条记录
+     */
+    @Override
+    public void onMarketData(String symbol, char entryType, double price, double size, long updateTime) {
+        encode(symbol, entryType, price, size, updateTime);
+    }
+
+    /**
+     * 当前写入位置，即已写入数据的结束位置
+     */
+    public int position() {
+        return position;
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 行情回放驱动：作为推送式行情源接入行情接入管道，按采集顺序将采集文件中的行情写入分配给它的环形缓冲区，
+ * 与生产行情源一样经接入线程写入下游，复现生产环境的接入顺序和缓冲区满时的背压
+ * 支持按原节奏(1x)、N倍速或不限速回放，同一文件同一速度下的写入顺序和节奏完全一致，
+ * 可离线复现开盘集合竞价等突发行情，测量分发器的吞吐和延迟
+ */
+public class TickReplayDriver implements MarketDataFeed {
+    public static final double MAX_SPEED = 0;   // 不限速，尽快写入
+
+    private final String name;
+    private final Path captureFile;
+    private final double speed;                 // 回放倍速，MAX_SPEED表示不限速
+    private final boolean rebaseTimestamps;     // 是否将更新时间改为回放时刻，便于按更新时间统计端到端延迟
+    private final CompletableFuture<Result> completion = new CompletableFuture<>();
+    private volatile boolean running;
+    private Thread thread;
+
+    public TickReplayDriver(Path captureFile, double speed) {
+        this(captureFile, speed, false);
+    }
+
+    public TickReplayDriver(Path captureFile, double speed, boolean rebaseTimestamps) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        }
+        this.name = "replay-" + captureFile.getFileName();
+        this.captureFile = captureFile;
+        this.speed = speed;
+        this.rebaseTimestamps = rebaseTimestamps;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 在回放线程上开始回放，sink为接入管道分配的环形缓冲区
+     */
+    @Override
+    public synchronized void start(MarketDataSink sink) {
+        if (thread != null) {
+            throw new IllegalStateException("Replay already started: " + name);
+        }
+        running = true;
+        thread = new Thread(() -> {
+            try {
+                completion.complete(replay(sink));
+            } catch (Throwable e) {
+                completion.completeExceptionally(e);
+            }
+        }, "tick-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止回放，返回后不再写入sink；未回放完的记录不再写入
+     */
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 接入到行情接入管道并等待回放结束，返回回放统计
+     */
+    public Result run(MarketDataIngestor ingestor) throws IOException, InterruptedException {
+        ingestor.addFeed(this);
+        return await();
+    }
+
+    /**
+     * 等待回放结束，返回回放统计
+     */
+    public Result await() throws IOException, InterruptedException {
+        try {
+            return completion.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Replay failed: " + name, e.getCause());
+        }
+    }
+
+    /**
+     * 回放结果，回放结束后完成
+     */
+    public CompletableFuture<Result> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * 将整个文件写入sink；sink为环形缓冲区时，缓冲区满会阻塞回放，计入落后于计划的时间
+     */
+    private Result replay(MarketDataSink sink) throws IOException {
+        long count = 0;
+        long maxLagNanos = 0;
+        long startNanos = System.nanoTime();
+        try (TickCaptureReader reader = new TickCaptureReader(captureFile)) {
+            while (running && reader.next()) {
+                if (speed != MAX_SPEED) {
+                    // 等到该记录按倍速换算后的回放时刻，记录落后于计划的最大时间
+                    long due = startNanos + (long) (reader.getOffsetNanos() / speed);
+                    long now = System.nanoTime();
+                    while (now < due) {
+                        LockSupport.parkNanos(due - now);
+                        now = System.nanoTime();
+                    }
+                    maxLagNanos = Math.max(maxLagNanos, now - due);
+                }
+                long updateTime = rebaseTimestamps ? System.currentTimeMillis() : reader.getUpdateTime();
+                if (reader.isDelete()) {
+                    sink.onMarketDataDelete(reader.getSymbol(), reader.getEntryType(), updateTime);
+                } else if (reader.isLevelUpdate()) {
+                    sink.onLevelUpdate(reader.getSymbol(), reader.getEntryType(), reader.getPrice(),
+                        reader.getSize(), updateTime);
+                } else {
+                    sink.onMarketData(reader.getSymbol(), reader.getEntryType(), reader.getPrice(),
+                        reader.getSize(), updateTime);
+                }
+                count++;
+            }
+        }
+        return new Result(count, System.nanoTime() - startNanos, maxLagNanos);
+    }
+
+    /**
+     * 回放统计
+     */
+    public static class Result {
+        private final long tickCount;
+        private final long elapsedNanos;
+        private final long maxLagNanos;         // 落后于计划回放时刻的最大纳秒数，不限速时为0
+
+        Result(long tickCount, long elapsedNanos, long maxLagNanos) {
+            this.tickCount = tickCount;
+            this.elapsedNanos = elapsedNanos;
+            this.maxLagNanos = maxLagNanos;
+        }
+
+        public long getTickCount() {
+            return tickCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        /**
+         * 平均每秒写入的行情数
+         */
+        public double getTicksPerSecond() {
+            return elapsedNanos == 0 ? 0 : tickCount * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("replayed %d ticks in %.1f ms (%.0f ticks/s, max lag %.3f ms)",
+                tickCount, elapsedNanos / 1e6, getTicksPerSecond(), maxLagNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者单消费者的行情环形缓冲区
+ * 各字段按列保存在预分配的数组中，写入和读取都不创建对象；读写位置各自只由一个线程推进，
+ * 通过有序写(lazySet)发布，不需要锁和CAS
+ * 缓冲区满时生产者等待消费者腾出空间，行情不会丢弃
+ */
+public class TickRingBuffer implements MarketDataSink {
+    private static final byte QUOTE = 0;
+    private static final byte DELETE = 1;
+    private static final byte LEVEL = 2;
+
+    private final int mask;
+    private final String[] symbols;
+    private final char[] entryTypes;
+    private final double[] prices;
+    private final double[] sizes;
+    private final long[] updateTimes;
+    private final byte[] kinds;                        // 记录类型：行情、删除或档位更新
+    private final AtomicLong tail = new AtomicLong();  // 下一个写入位置，只由生产者推进
+    private final AtomicLong head = new AtomicLong();  // 下一个读取位置，只由消费者推进
+    private long cachedHead;                           // 生产者缓存的读取位置，减少对head的读取
+    private long fullWaits;                            // 生产者因缓冲区满而等待的次数
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public TickRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.symbols = new String[size];
+        this.entryTypes = new char[size];
+        this.prices = new double[size];
+        this.sizes = new double[size];
+        this.updateTimes = new long[size];
+        this.kinds = new byte[size];
+    }
+
+    /**
+     * 生产者写入一条行情，缓冲区满时等待
+     */
+    @Override
+    public void onMarketData(String symbol, char entryType, double price, double size, long updateTime) {
+        publish(symbol, entryType, price, size, updateTime, QUOTE);
+    }
+
+    /**
+     * 生产者写入一条删除，与行情按同一顺序转交下游
+     */
+    @Override
+    public void onMarketDataDelete(String symbol, char entryType, long updateTime) {
+        publish(symbol, entryType, 0, 0, updateTime, DELETE);
+    }
+
+    /**
+     * 生产者写入一条档位更新，数据类型列保存买卖方向
+     */
+    @Override
+    public void onLevelUpdate(String symbol, char side, double price, double size, long updateTime) {
+        publish(symbol, side, price, size, updateTime, LEVEL);
+    }
+
+    private void publish(String symbol, char entryType, double price, double size, long updateTime, byte kind) {
+        long position = tail.get();
+        if (position - cachedHead > mask) {
+            cachedHead = head.get();
+            if (position - cachedHead > mask) {
+                fullWaits++;
+                do {
+                    LockSupport.parkNanos(1000);
+                    cachedHead = head.get();
+                } while (position - cachedHead > mask);
+            }
+        }
+        int index = (int) position & mask;
+        symbols[index] = symbol;
+        entryTypes[index] = entryType;
+        prices[index] = price;
+        sizes[index] = size;
+        updateTimes[index] = updateTime;
+        kinds[index] = kind;
+        // 字段写完后再发布写入位置
+        tail.lazySet(position + 1);
+    }
+
+    /**
+     * 消费者将最多maxCount条行情按写入顺序转交下游
+     * 下游抛出异常时，出错的那条行情视为已消费，异常继续抛出
+     * @return 转交的条数
+     */
+    public int drainTo(MarketDataSink sink, int maxCount) {
+        long position = head.get();
+        long available = tail.get() - position;
+        int count = (int) Math.min(available, maxCount);
+        int consumed = 0;
+        try {
+            while (consumed < count) {
+                int index = (int) (position + consumed) & mask;
+                String symbol = symbols[index];
+                symbols[index] = null;          // 不保留对证券代码的引用
+                consumed++;
+                if (kinds[index] == DELETE) {
+                    sink.onMarketDataDelete(symbol, entryTypes[index], updateTimes[index]);
+                } else if (kinds[index] == LEVEL) {
+                    sink.onLevelUpdate(symbol, entryTypes[index], prices[index], sizes[index], updateTimes[index]);
+                } else {
+                    sink.onMarketData(symbol, entryTypes[index], prices[index], sizes[index], updateTimes[index]);
+                }
+            }
+        } finally {
+            if (consumed > 0) {
+                head.lazySet(position + consumed);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 当前积压的条数（近似值）
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 生产者因缓冲区满而等待的次数，只用于监控，非生产者线程读取时为近似值
+     */
+    public long getFullWaits() {
+        return fullWaits;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * 令牌桶限速器，按每秒速率补充令牌，最多积累1秒的令牌作为突发容量
+ * 推送在取出变动时按估算的消息数/字节数预留令牌，余额不足时不取出，同一时刻到期的多个订阅不会同时通过检查；
+ * 不经过预留的发送（如快照）发出后直接扣减，余额可以为负（欠账），欠账在之后的补充中偿还
+ */
+public class TokenBucket {
+    private final long ratePerSecond;
+    private final long capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("ratePerSecond must be positive: " + ratePerSecond);
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = ratePerSecond;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 余额足够时预留指定数量的令牌；超过突发容量的请求在桶满时放行并记为欠账，避免永远无法发送
+     * @return 是否已预留
+     */
+    public synchronized boolean tryAcquire(long amount) {
+        refill(System.nanoTime());
+        if (tokens < Math.min(amount, capacity)) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    /**
+     * 归还预留后未使用的令牌
+     */
+    public synchronized void release(long amount) {
+        tokens = Math.min(capacity, tokens + amount);
+    }
+
+    /**
+     * 扣减令牌，余额不足时记为欠账
+     */
+    public synchronized void consume(long amount) {
+        refill(System.nanoTime());
+        tokens -= amount;
+    }
+
+    /**
+     * 距离可以预留指定数量的令牌还需等待的时间(毫秒)，余额足够时返回0
+     */
+    public synchronized long millisUntilAvailable(long amount) {
+        refill(System.nanoTime());
+        double required = Math.min(amount, capacity);
+        if (tokens >= required) {
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((required - tokens) * 1000 / ratePerSecond));
+    }
+
+    public long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * (double) ratePerSecond / 1_000_000_000L);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
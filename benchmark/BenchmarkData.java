@@ -0,0 +1,87 @@
+import quickfix.SessionID;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateAction;
+import quickfix.field.MDUpdateType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试数据构造，固定随机种子，同一参数下每次运行的数据完全一致
+ */
+final class BenchmarkData {
+    static final List<Character> ENTRY_TYPES = Arrays.asList(MDEntryType.BID, MDEntryType.OFFER, MDEntryType.TRADE);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 注册N个证券代码，返回的注册表中证券ID为0..N-1
+     */
+    static SymbolRegistry registry(int symbolCount) {
+        SymbolRegistry registry = new SymbolRegistry();
+        for (int i = 0; i < symbolCount; i++) {
+            registry.intern(symbol(i));
+        }
+        return registry;
+    }
+
+    static String symbol(int id) {
+        return String.format("SYM%05d", id);
+    }
+
+    static SessionID session(int index) {
+        return new SessionID("FIX.4.4", "MDS", "CLIENT" + index);
+    }
+
+    /**
+     * 构造订阅，每个订阅从symbolCount个证券中随机选取symbolsPerSubscription个
+     */
+    static Subscription subscription(Random random, int index, int symbolCount, int symbolsPerSubscription,
+                                     int updateType) {
+        int[] symbolIds = new int[symbolsPerSubscription];
+        for (int i = 0; i < symbolIds.length; i++) {
+            symbolIds[i] = random.nextInt(symbolCount);
+        }
+        return new Subscription("REQ" + index, session(index), symbolIds, ENTRY_TYPES, 0, updateType, 0L);
+    }
+
+    static Subscription fullRefreshSubscription(int index) {
+        return new Subscription("REQ" + index, session(index), new int[0], ENTRY_TYPES, 0,
+            MDUpdateType.FULL_REFRESH, 0L);
+    }
+
+    static Subscription incrementalSubscription(int index) {
+        return new Subscription("REQ" + index, session(index), new int[0], ENTRY_TYPES, 0,
+            MDUpdateType.INCREMENTAL_REFRESH, 0L);
+    }
+
+    /**
+     * 构造count个条目，证券和数据类型依次轮换
+     */
+    static List<MarketDataEntry> entries(Random random, int count, int symbolCount) {
+        List<MarketDataEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int symbolId = i % symbolCount;
+            char type = ENTRY_TYPES.get(i % ENTRY_TYPES.size());
+            double price = 10 + random.nextInt(100_000) / 100.0;
+            double size = 100 * (1 + random.nextInt(100));
+            entries.add(new MarketDataEntry(symbol(symbolId), symbolId, type, price, size, 1_700_000_000_000L + i));
+        }
+        return entries;
+    }
+
+    /**
+     * 构造一个分发周期的变动批次，按新增、变动、删除的常见比例混合
+     */
+    static List<MarketDataChange> changes(Random random, int count, int symbolCount) {
+        List<MarketDataChange> changes = new ArrayList<>(count);
+        for (MarketDataEntry entry : entries(random, count, symbolCount)) {
+            int roll = random.nextInt(100);
+            char action = roll < 10 ? MDUpdateAction.NEW : roll < 95 ? MDUpdateAction.CHANGE : MDUpdateAction.DELETE;
+            changes.add(new MarketDataChange(entry, action));
+        }
+        return changes;
+    }
+}
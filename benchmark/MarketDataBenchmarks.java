@@ -0,0 +1,29 @@
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 行情热点路径基准测试入口，默认运行全部基准并附带GC分析（-prof gc，输出每次操作的分配字节数）
+ * 结果中Throughput模式为每秒操作数，SampleTime模式给出p50/p90/p99/p99.9等延迟分位数
+ *
+ * 用法：java -cp <classpath> MarketDataBenchmarks [基准名正则] [参数名=值1,值2 ...]
+ * 例如：java -cp ... MarketDataBenchmarks UpdateMessage subscriberCount=1000 batchSize=50
+ * 也可直接使用JMH命令行：java -cp ... org.openjdk.jmh.Main UpdateMessage -prof gc -p batchSize=50
+ */
+public class MarketDataBenchmarks {
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(args.length > 0 ? args[0] : ".*Benchmark")
+            .addProfiler("gc");
+        for (int i = 1; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Ignoring malformed parameter: " + args[i]);
+                continue;
+            }
+            options.param(args[i].substring(0, eq), args[i].substring(eq + 1).split(","));
+        }
+        new Runner(options.build()).run();
+    }
+}
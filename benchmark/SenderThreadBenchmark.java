@@ -0,0 +1,78 @@
+import org.openjdk.jmh.annotations.*;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 出站发送线程模式对比：平台线程池与每会话虚拟线程(JDK 21+)
+ * 每次操作向所有会话各投递一批更新并等待全部发送完成，发送时阻塞blockMicros模拟消息存储和socket写入
+ * 当前JDK不支持虚拟线程时，virtual参数组在Setup中失败，不影响其他参数组
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SenderThreadBenchmark {
+    @Param({"5000"})
+    int sessionCount;
+
+    @Param({"0", "200"})
+    int blockMicros;
+
+    @Param({"platform", "virtual"})
+    String mode;
+
+    @Param({"16"})
+    int platformThreads;
+
+    private final AtomicInteger sent = new AtomicInteger();
+    private OutboundDispatcher dispatcher;
+    private Subscription[] subscriptions;
+    private List<MarketDataChange> changes;
+
+    @Setup
+    public void setUp() {
+        ExecutorService workers = "virtual".equals(mode)
+            ? SenderExecutors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(platformThreads);
+        long blockNanos = TimeUnit.MICROSECONDS.toNanos(blockMicros);
+        dispatcher = new OutboundDispatcher((subscription, batch, levelChanges) -> {
+            if (blockNanos > 0) {
+                LockSupport.parkNanos(blockNanos);
+            }
+            sent.incrementAndGet();
+        }, workers, 10000, Long.MAX_VALUE, Long.MAX_VALUE);
+        subscriptions = new Subscription[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            subscriptions[i] = BenchmarkData.incrementalSubscription(i);
+            dispatcher.openQueue(subscriptions[i].getSessionId());
+        }
+        changes = BenchmarkData.changes(new Random(42), 1, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    /**
+     * 一轮扇出：每个会话一批，返回时全部已发送
+     */
+    @Benchmark
+    public int fanOut() {
+        int target = sent.get() + sessionCount;
+        for (Subscription subscription : subscriptions) {
+            dispatcher.enqueue(subscription, changes);
+        }
+        while (sent.get() < target) {
+            LockSupport.parkNanos(10_000);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,50 @@
+import org.openjdk.jmh.annotations.*;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 快照切分开销：将N个条目按字节预算切分为快照消息
+ * 条目取自与生产相同的最新值缓存和快照缓存，条目组在首次调用后缓存，
+ * 与生产中多个会话共享同一份全市场快照的情况一致
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotChunkingBenchmark {
+    @Param({"100", "1000", "10000"})
+    int batchSize;
+
+    @Param({"4096", "16384"})
+    int maxChunkBytes;
+
+    private MarketDataSnapshotGenerator generator;
+    private List<MarketDataEntry> entries;
+
+    @Setup
+    public void setUp() {
+        MarketDataCache cache = new MarketDataCache(BenchmarkData.registry(5000), null);
+        for (MarketDataEntry entry : BenchmarkData.entries(new Random(42), batchSize, 5000)) {
+            cache.onMarketData(entry.getSymbol(), entry.getEntryType(), entry.getPrice(), entry.getSize(),
+                entry.getUpdateTime());
+        }
+        MarketDataSnapshotCache snapshotCache = new MarketDataSnapshotCache(cache);
+        generator = new MarketDataSnapshotGenerator(snapshotCache, new OrderBookService(cache.getSymbolRegistry()),
+            null, 1, 1, maxChunkBytes);
+        entries = snapshotCache.getFullMarketSnapshot(BenchmarkData.ENTRY_TYPES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        generator.shutdown();
+    }
+
+    @Benchmark
+    public List<MarketDataSnapshotFullRefresh> buildChunks() {
+        return generator.buildChunks(entries, "SNAPSHOT");
+    }
+}
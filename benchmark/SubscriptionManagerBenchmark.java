@@ -0,0 +1,87 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import quickfix.field.MDUpdateType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订阅管理器并发开销：订阅增删与分发线程的订阅者查找同时进行
+ * 每组2个线程不断增删订阅（模拟开盘前后的订阅潮），4个线程按证券查找订阅者和按请求ID查找订阅
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscriptionManagerBenchmark {
+    private static final int SYMBOL_COUNT = 5000;
+
+    @Param({"1000", "10000"})
+    int subscriberCount;
+
+    @Param({"1", "20", "500"})
+    int symbolsPerSubscription;
+
+    @Param({"1", "4"})
+    int shardCount;
+
+    private MarketDataSubscriptionManager manager;
+    private Subscription[] subscriptions;
+    private String[] reqIds;                    // 预先构造的请求ID，测量方法中不拼接字符串
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        manager = new MarketDataSubscriptionManager(shardCount);
+        subscriptions = new Subscription[subscriberCount];
+        reqIds = new String[subscriberCount];
+        for (int i = 0; i < subscriberCount; i++) {
+            subscriptions[i] = BenchmarkData.subscription(random, i, SYMBOL_COUNT, symbolsPerSubscription,
+                MDUpdateType.INCREMENTAL_REFRESH);
+            manager.addSubscription(subscriptions[i].getReqId(), subscriptions[i]);
+            reqIds[i] = subscriptions[i].getReqId();
+        }
+    }
+
+    /**
+     * 每个线程各自的随机序列，避免线程间共享Random造成额外竞争
+     */
+    @State(Scope.Thread)
+    public static class ThreadCursor {
+        final Random random = new Random(Thread.currentThread().getId());
+    }
+
+    /**
+     * 移除一个订阅后重新添加，订阅总数保持不变
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void addRemove(ThreadCursor cursor) {
+        Subscription subscription = subscriptions[cursor.random.nextInt(subscriptions.length)];
+        manager.removeSubscription(subscription.getReqId());
+        manager.addSubscription(subscription.getReqId(), subscription);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public void lookup(ThreadCursor cursor, Blackhole blackhole) {
+        int symbolId = cursor.random.nextInt(SYMBOL_COUNT);
+        for (int shard = 0; shard < manager.getShardCount(); shard++) {
+            blackhole.consume(manager.getShardIndex(shard).getSymbolSubscribers(symbolId));
+        }
+        blackhole.consume(manager.getSubscription(reqIds[cursor.random.nextInt(reqIds.length)]));
+    }
+
+    /**
+     * 无竞争时的查找开销，作为对照
+     */
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public void lookupAlone(ThreadCursor cursor, Blackhole blackhole) {
+        lookup(cursor, blackhole);
+    }
+}
@@ -0,0 +1,86 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订阅匹配开销：一批变动逐条与N个订阅比对证券和数据类型
+ * 证券数较少的订阅走位图，较多时走有序数组二分查找，两种路径都由symbolsPerSubscription覆盖
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscriptionMatchBenchmark {
+    private static final int SYMBOL_COUNT = 5000;
+
+    @Param({"100", "1000"})
+    int subscriberCount;
+
+    @Param({"1", "20", "500"})
+    int symbolsPerSubscription;
+
+    @Param({"50", "500"})
+    int batchSize;
+
+    private Subscription[] subscriptions;
+    private int[] symbolIds;
+    private char[] entryTypes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        subscriptions = new Subscription[subscriberCount];
+        for (int i = 0; i < subscriberCount; i++) {
+            subscriptions[i] = BenchmarkData.subscription(random, i, SYMBOL_COUNT, symbolsPerSubscription,
+                MDUpdateType.INCREMENTAL_REFRESH);
+        }
+        char[] types = {MDEntryType.BID, MDEntryType.OFFER, MDEntryType.TRADE, MDEntryType.OPENING_PRICE};
+        symbolIds = new int[batchSize];
+        entryTypes = new char[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            symbolIds[i] = random.nextInt(SYMBOL_COUNT);
+            entryTypes[i] = types[random.nextInt(types.length)];
+        }
+    }
+
+    @Benchmark
+    public int isSubscribedTo() {
+        int matched = 0;
+        for (Subscription subscription : subscriptions) {
+            for (int symbolId : symbolIds) {
+                if (subscription.isSubscribedTo(symbolId)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int isSubscribedToType() {
+        int matched = 0;
+        for (Subscription subscription : subscriptions) {
+            for (char entryType : entryTypes) {
+                if (subscription.isSubscribedToType(entryType)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public void matchBoth(Blackhole blackhole) {
+        for (Subscription subscription : subscriptions) {
+            for (int i = 0; i < symbolIds.length; i++) {
+                blackhole.consume(subscription.isSubscribedTo(symbolIds[i])
+                    && subscription.isSubscribedToType(entryTypes[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二进制行情tick编解码开销，每次操作处理batchSize条，配合-prof gc确认解码路径不分配对象
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TickCodecBenchmark {
+    @Param({"1", "100", "1000"})
+    int batchSize;
+
+    private List<MarketDataEntry> ticks;
+    private ByteBuffer encoded;
+    private ByteBuffer scratch;
+    private final TickEncoder encoder = new TickEncoder();
+    private final TickDecoder decoder = new TickDecoder();
+
+    @Setup
+    public void setUp() {
+        ticks = BenchmarkData.entries(new Random(42), batchSize, 5000);
+        encoded = ByteBuffer.allocateDirect(batchSize * BinaryTickFormat.RECORD_BYTES).order(BinaryTickFormat.BYTE_ORDER);
+        scratch = ByteBuffer.allocateDirect(batchSize * BinaryTickFormat.RECORD_BYTES).order(BinaryTickFormat.BYTE_ORDER);
+        encoder.wrap(encoded, 0);
+        for (MarketDataEntry tick : ticks) {
+            encoder.encode(tick.getSymbol(), tick.getEntryType(), tick.getPrice(), tick.getSize(), tick.getUpdateTime());
+        }
+        // 预热符号表，测量的是稳态解码
+        decoder.wrap(encoded, 0, encoded.capacity()).decodeTo((symbol, type, price, size, time) -> { });
+    }
+
+    @Benchmark
+    public int encode() {
+        encoder.wrap(scratch, 0);
+        for (MarketDataEntry tick : ticks) {
+            encoder.encode(tick.getSymbol(), tick.getEntryType(), tick.getPrice(), tick.getSize(), tick.getUpdateTime());
+        }
+        return encoder.position();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        decoder.wrap(encoded, 0, encoded.capacity());
+        while (decoder.next()) {
+            blackhole.consume(decoder.symbol());
+            blackhole.consume(decoder.price());
+            blackhole.consume(decoder.size());
+            blackhole.consume(decoder.updateTime());
+            blackhole.consume(decoder.entryType());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分发周期的消息构建开销：一批变动向N个订阅者各构建一次推送消息
+ * 条目组在条目上缓存，首次构建后所有订阅者共享，测量的是扇出时每个订阅者的增量开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateMessageBenchmark {
+    @Param({"1", "100", "1000"})
+    int subscriberCount;
+
+    @Param({"10", "50", "500"})
+    int batchSize;
+
+    private Subscription[] fullRefreshSubscriptions;
+    private Subscription[] incrementalSubscriptions;
+    private List<MarketDataChange> changes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        changes = BenchmarkData.changes(random, batchSize, 5000);
+        fullRefreshSubscriptions = new Subscription[subscriberCount];
+        incrementalSubscriptions = new Subscription[subscriberCount];
+        for (int i = 0; i < subscriberCount; i++) {
+            fullRefreshSubscriptions[i] = BenchmarkData.fullRefreshSubscription(i);
+            incrementalSubscriptions[i] = BenchmarkData.incrementalSubscription(i);
+        }
+    }
+
+    @Benchmark
+    public void fullRefresh(Blackhole blackhole) {
+        for (Subscription subscription : fullRefreshSubscriptions) {
+            List<MarketDataSnapshotFullRefresh> messages =
+                MarketDataDistributor.createUpdateMessages(subscription, changes);
+            blackhole.consume(messages);
+        }
+    }
+
+    @Benchmark
+    public void incrementalRefresh(Blackhole blackhole) {
+        for (Subscription subscription : incrementalSubscriptions) {
+            List<MarketDataIncrementalRefresh> messages =
+                MarketDataDistributor.createIncrementalRefreshes(subscription, changes);
+            blackhole.consume(messages);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import quickfix.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测：在同一进程内启动MarketDataApplication接收方和N个QuickFIX/J发起方会话，经本机回环连接
+ * 各会话按配置的比例发出快照、订阅、取消订阅和全市场订阅请求，压测行情源作为推送式行情源接入，按固定速率写入行情，
+ * 统计行情从写入行情源缓冲区到订阅端收到的延迟分位数和吞吐，用于确定单节点能承载的会话数和行情速率
+ *
+ * 用法：java -cp <classpath> -Dloadtest.sessions=200 -Dloadtest.ticksPerSecond=50000 FixLoadHarness
+ * 其余配置见LoadTestConfig；classpath中需要QuickFIX/J及其FIX44.xml数据字典
+ */
+public class FixLoadHarness {
+    private static final String SERVER_COMP_ID = "MDS";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = new LoadTestConfig();
+        System.out.println("Load test configuration: " + config);
+
+        MarketDataApplication server = new MarketDataApplication();
+        // 经环形缓冲区和接入线程写入缓存，测量的是生产行情源的接入路径
+        TickPublisher publisher = new TickPublisher(config);
+        server.addFeed(publisher);
+        LoadTestClient client = new LoadTestClient(config, publisher);
+
+        SocketAcceptor acceptor = new SocketAcceptor(server, new MemoryStoreFactory(), acceptorSettings(config),
+            new ScreenLogFactory(false, false, false), new DefaultMessageFactory());
+        SocketInitiator initiator = new SocketInitiator(client, new MemoryStoreFactory(), initiatorSettings(config),
+            new ScreenLogFactory(false, false, false), new DefaultMessageFactory());
+        acceptor.start();
+        initiator.start();
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        Thread publisherThread = new Thread(publisher, "loadtest-publisher");
+        try {
+            if (!awaitLogon(client, config)) {
+                System.err.println("Only " + client.getLoggedOnSessions().size() + " of " + config.sessions
+                    + " sessions logged on within " + config.logonTimeoutSeconds + "s");
+            }
+            // 每个会话先订阅一次，之后按请求速率随机发出请求
+            for (SessionID sessionId : client.getLoggedOnSessions()) {
+                client.sendRequest(sessionId, LoadTestConfig.RequestKind.SUBSCRIBE, ThreadLocalRandom.current());
+            }
+            scheduleRequests(scheduler, client, config);
+            publisherThread.start();
+
+            TimeUnit.SECONDS.sleep(config.warmupSeconds);
+            client.resetStatistics();
+            server.getMetrics().reset();
+            long ticksAtStart = publisher.getPublishedCount();
+            long startNanos = System.nanoTime();
+            for (int elapsed = 5; elapsed <= config.durationSeconds; elapsed += 5) {
+                TimeUnit.SECONDS.sleep(5);
+                System.out.println(String.format("[%3ds] sessions=%d ticks=%d X=%d W=%d rejects=%d latency: %s",
+                    elapsed, client.getLoggedOnSessions().size(), publisher.getPublishedCount() - ticksAtStart,
+                    client.incrementalMessages.get(), client.snapshotMessages.get(), client.rejects.get(),
+                    client.latency));
+            }
+            TimeUnit.SECONDS.sleep(config.durationSeconds % 5);
+            report(config, client, publisher.getPublishedCount() - ticksAtStart, System.nanoTime() - startNanos);
+            reportServer(server);
+        } finally {
+            publisher.stop();
+            scheduler.shutdownNow();
+            initiator.stop();
+            acceptor.stop();
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private static boolean awaitLogon(LoadTestClient client, LoadTestConfig config) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.logonTimeoutSeconds);
+        while (client.getLoggedOnSessions().size() < config.sessions) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        return true;
+    }
+
+    /**
+     * 按每会话请求速率定时发出请求，每个周期对每个会话按概率决定是否发出
+     */
+    private static void scheduleRequests(ScheduledExecutorService scheduler, LoadTestClient client,
+                                         LoadTestConfig config) {
+        if (config.requestsPerSecond <= 0) {
+            return;
+        }
+        long periodMillis = 100;
+        double probability = config.requestsPerSecond * periodMillis / 1000.0;
+        Random random = new Random(11);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                for (SessionID sessionId : client.getLoggedOnSessions()) {
+                    // 每周期的期望请求数可能大于1
+                    double remaining = probability;
+                    while (remaining > 0 && random.nextDouble() < remaining) {
+                        client.sendRequest(sessionId, config.nextRequestKind(random), random);
+                        remaining -= 1;
+                    }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Load test request failed: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void report(LoadTestConfig config, LoadTestClient client, long ticks, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("==== Load test result ====");
+        System.out.println(config);
+        System.out.println(String.format("sessions logged on: %d", client.getLoggedOnSessions().size()));
+        System.out.println(String.format("ticks published: %d (%.0f/s)", ticks, ticks / seconds));
+        System.out.println(String.format("requests sent: %d, rejects: %d", client.requestsSent.get(),
+            client.rejects.get()));
+        System.out.println(String.format("snapshot messages (35=W): %d (%.0f/s)", client.snapshotMessages.get(),
+            client.snapshotMessages.get() / seconds));
+        System.out.println(String.format("incremental messages (35=X): %d (%.0f/s), entries: %d (%.0f/s)",
+            client.incrementalMessages.get(), client.incrementalMessages.get() / seconds,
+            client.incrementalEntries.get(), client.incrementalEntries.get() / seconds));
+        System.out.println("tick-to-receive latency: " + client.latency);
+    }
+
+    private static void reportServer(MarketDataApplication server) {
+        MarketDataMetrics metrics = server.getMetrics();
+        System.out.println("==== Server metrics ====");
+        System.out.println(metrics.getSummary());
+        for (String line : metrics.getSymbolClassStatistics()) {
+            System.out.println(line);
+        }
+        System.out.println("max session lag: " + metrics.getMaxSessionLagMillis() + "ms");
+    }
+
+    private static SessionSettings acceptorSettings(LoadTestConfig config) {
+        SessionSettings settings = new SessionSettings();
+        applyCommonSettings(settings);
+        settings.setString("ConnectionType", "acceptor");
+        settings.setLong("SocketAcceptPort", config.port);
+        for (SessionID sessionId : sessionIds(config, true)) {
+            settings.setString(sessionId, "BeginString", "FIX.4.4");
+        }
+        return settings;
+    }
+
+    private static SessionSettings initiatorSettings(LoadTestConfig config) {
+        SessionSettings settings = new SessionSettings();
+        applyCommonSettings(settings);
+        settings.setString("ConnectionType", "initiator");
+        settings.setString("SocketConnectHost", "127.0.0.1");
+        settings.setLong("SocketConnectPort", config.port);
+        settings.setLong("ReconnectInterval", 1);
+        for (SessionID sessionId : sessionIds(config, false)) {
+            settings.setString(sessionId, "BeginString", "FIX.4.4");
+        }
+        return settings;
+    }
+
+    private static void applyCommonSettings(SessionSettings settings) {
+        settings.setString("StartTime", "00:00:00");
+        settings.setString("EndTime", "00:00:00");
+        settings.setLong("HeartBtInt", 30);
+        settings.setString("ResetOnLogon", "Y");
+        settings.setString("UseDataDictionary", "Y");
+        settings.setString("DataDictionary", "FIX44.xml");
+        // 请求中携带自定义的更新间隔字段
+        settings.setString("ValidateUserDefinedFields", "N");
+        settings.setString("AllowUnknownMsgFields", "Y");
+        settings.setString("ValidateIncomingMessage", "N");
+    }
+
+    private static List<SessionID> sessionIds(LoadTestConfig config, boolean acceptor) {
+        List<SessionID> sessionIds = new ArrayList<>(config.sessions);
+        for (int i = 0; i < config.sessions; i++) {
+            String clientCompId = String.format("LOAD%04d", i);
+            sessionIds.add(acceptor
+                ? new SessionID("FIX.4.4", SERVER_COMP_ID, clientCompId)
+                : new SessionID("FIX.4.4", clientCompId, SERVER_COMP_ID));
+        }
+        return sessionIds;
+    }
+}
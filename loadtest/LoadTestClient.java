@@ -0,0 +1,175 @@
+import quickfix.*;
+import quickfix.field.*;
+import quickfix.fix44.MarketDataIncrementalRefresh;
+import quickfix.fix44.MarketDataRequest;
+import quickfix.fix44.MarketDataRequestReject;
+import quickfix.fix44.MarketDataSnapshotFullRefresh;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测订阅端：所有模拟会话共用的发起方应用，负责发出行情请求并统计收到的消息和行情到达延迟
+ * 增量刷新(35=X)中的行情统计延迟，快照和初始快照(35=W)只计数
+ */
+final class LoadTestClient extends ApplicationAdapter {
+    private final LoadTestConfig config;
+    private final TickPublisher publisher;
+    private final Set<SessionID> loggedOn = ConcurrentHashMap.newKeySet();
+    // 会话ID -> 该会话当前有效的订阅请求ID
+    private final Map<SessionID, Deque<String>> activeSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong requestSequence = new AtomicLong();
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    final AtomicLong requestsSent = new AtomicLong();
+    final AtomicLong snapshotMessages = new AtomicLong();
+    final AtomicLong incrementalMessages = new AtomicLong();
+    final AtomicLong incrementalEntries = new AtomicLong();
+    final AtomicLong rejects = new AtomicLong();
+
+    LoadTestClient(LoadTestConfig config, TickPublisher publisher) {
+        this.config = config;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void onLogon(SessionID sessionId) {
+        activeSubscriptions.putIfAbsent(sessionId, new ConcurrentLinkedDeque<>());
+        loggedOn.add(sessionId);
+    }
+
+    @Override
+    public void onLogout(SessionID sessionId) {
+        loggedOn.remove(sessionId);
+        // 服务端在登出时清理订阅
+        Deque<String> subscriptions = activeSubscriptions.get(sessionId);
+        if (subscriptions != null) {
+            subscriptions.clear();
+        }
+    }
+
+    @Override
+    public void fromApp(Message message, SessionID sessionId) throws FieldNotFound {
+        if (message instanceof MarketDataIncrementalRefresh) {
+            onIncrementalRefresh((MarketDataIncrementalRefresh) message);
+        } else if (message instanceof MarketDataSnapshotFullRefresh) {
+            snapshotMessages.incrementAndGet();
+        } else if (message instanceof MarketDataRequestReject) {
+            rejects.incrementAndGet();
+        }
+    }
+
+    private void onIncrementalRefresh(MarketDataIncrementalRefresh message) throws FieldNotFound {
+        long receiveNanos = System.nanoTime();
+        incrementalMessages.incrementAndGet();
+        int count = message.getGroupCount(NoMDEntries.FIELD);
+        MarketDataIncrementalRefresh.NoMDEntries group = new MarketDataIncrementalRefresh.NoMDEntries();
+        for (int i = 1; i <= count; i++) {
+            message.getGroup(i, group);
+            incrementalEntries.incrementAndGet();
+            if (!group.isSetMDEntrySize()) {
+                continue;
+            }
+            long publishNanos = publisher.publishNanosOf(group.getMDEntrySize().getValue());
+            if (publishNanos > 0) {
+                latency.record(receiveNanos - publishNanos);
+            }
+        }
+    }
+
+    Set<SessionID> getLoggedOnSessions() {
+        return loggedOn;
+    }
+
+    /**
+     * 为会话发出一个指定类型的行情请求
+     */
+    void sendRequest(SessionID sessionId, LoadTestConfig.RequestKind kind, Random random) {
+        Deque<String> subscriptions = activeSubscriptions.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        if (kind == LoadTestConfig.RequestKind.UNSUBSCRIBE && subscriptions.isEmpty()) {
+            kind = LoadTestConfig.RequestKind.SUBSCRIBE;
+        }
+        MarketDataRequest request;
+        switch (kind) {
+            case SNAPSHOT:
+                request = createRequest(nextReqId(sessionId), SubscriptionRequestType.SNAPSHOT, random, false);
+                break;
+            case SUBSCRIBE:
+            case WILDCARD:
+                String reqId = nextReqId(sessionId);
+                request = createRequest(reqId, SubscriptionRequestType.SNAPSHOT_PLUS_UPDATES, random,
+                    kind == LoadTestConfig.RequestKind.WILDCARD);
+                subscriptions.addLast(reqId);
+                break;
+            case UNSUBSCRIBE:
+                String cancelled = random.nextBoolean() ? subscriptions.pollFirst() : subscriptions.pollLast();
+                if (cancelled == null) {
+                    return;
+                }
+                request = createRequest(cancelled, SubscriptionRequestType.DISABLE_PREVIOUS_SNAPSHOT_PLUS_UPDATE,
+                    random, true);
+                break;
+            default:
+                return;
+        }
+        try {
+            Session.sendToTarget(request, sessionId);
+            requestsSent.incrementAndGet();
+        } catch (SessionNotFound e) {
+            System.err.println("Load test session not found: " + sessionId);
+        }
+    }
+
+    private String nextReqId(SessionID sessionId) {
+        return sessionId.getSenderCompID() + "-" + requestSequence.incrementAndGet();
+    }
+
+    /**
+     * 创建行情请求，订阅一律使用增量刷新
+     * @param wholeMarket 是否请求全市场(NoRelatedSym=0)
+     */
+    private MarketDataRequest createRequest(String reqId, char requestType, Random random, boolean wholeMarket) {
+        MarketDataRequest request = new MarketDataRequest();
+        request.set(new MDReqID(reqId));
+        request.set(new SubscriptionRequestType(requestType));
+        request.set(new MarketDepth(1));
+        request.set(new MDUpdateType(MDUpdateType.INCREMENTAL_REFRESH));
+        if (config.updateIntervalMillis > 0) {
+            request.setInt(MarketDataApplication.UPDATE_INTERVAL_MILLIS_TAG, (int) config.updateIntervalMillis);
+        }
+        for (char type : new char[] {MDEntryType.BID, MDEntryType.OFFER, MDEntryType.TRADE}) {
+            MarketDataRequest.NoMDEntryTypes typeGroup = new MarketDataRequest.NoMDEntryTypes();
+            typeGroup.set(new MDEntryType(type));
+            request.addGroup(typeGroup);
+        }
+        if (wholeMarket) {
+            request.set(new NoRelatedSym(0));
+        } else {
+            for (int i = 0; i < config.symbolsPerRequest; i++) {
+                MarketDataRequest.NoRelatedSym symbolGroup = new MarketDataRequest.NoRelatedSym();
+                symbolGroup.set(new Symbol(LoadTestConfig.symbol(random.nextInt(config.symbols))));
+                request.addGroup(symbolGroup);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * 清零统计，预热结束时调用
+     */
+    void resetStatistics() {
+        latency.reset();
+        requestsSent.set(0);
+        snapshotMessages.set(0);
+        incrementalMessages.set(0);
+        incrementalEntries.set(0);
+        rejects.set(0);
+    }
+}
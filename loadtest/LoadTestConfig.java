@@ -0,0 +1,77 @@
+import java.util.Random;
+
+/**
+ * 压测配置，全部通过系统属性指定，例如：
+ * -Dloadtest.sessions=200 -Dloadtest.ticksPerSecond=50000 -Dloadtest.mix=snapshot=1,subscribe=4,unsubscribe=2,wildcard=1
+ */
+final class LoadTestConfig {
+    final int port = Integer.getInteger("loadtest.port", 9880);
+    final int sessions = Integer.getInteger("loadtest.sessions", 50);
+    final int symbols = Integer.getInteger("loadtest.symbols", 1000);
+    final int symbolsPerRequest = Integer.getInteger("loadtest.symbolsPerRequest", 20);
+    final int ticksPerSecond = Integer.getInteger("loadtest.ticksPerSecond", 10_000);
+    final int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 60);
+    final int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 10);
+    // 每个会话每秒发出的行情请求数，请求类型按mix的权重随机选择
+    final double requestsPerSecond = Double.parseDouble(System.getProperty("loadtest.requestsPerSecond", "0.5"));
+    final long updateIntervalMillis = Long.getLong("loadtest.updateIntervalMillis", 0L);
+    final int logonTimeoutSeconds = Integer.getInteger("loadtest.logonTimeoutSeconds", 30);
+
+    private final RequestKind[] kinds = RequestKind.values();
+    private final int[] cumulativeWeights = new int[kinds.length];
+
+    LoadTestConfig() {
+        String mix = System.getProperty("loadtest.mix", "snapshot=1,subscribe=4,unsubscribe=2,wildcard=1");
+        int[] weights = new int[kinds.length];
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid request mix entry: " + part);
+            }
+            weights[RequestKind.valueOf(pair[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        int total = 0;
+        for (int i = 0; i < kinds.length; i++) {
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Request mix has no positive weight: " + mix);
+        }
+    }
+
+    /**
+     * 按权重随机选择请求类型
+     */
+    RequestKind nextRequestKind(Random random) {
+        int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < kinds.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return kinds[i];
+            }
+        }
+        return kinds[kinds.length - 1];
+    }
+
+    static String symbol(int index) {
+        return String.format("LT%05d", index);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sessions=%d symbols=%d symbolsPerRequest=%d ticksPerSecond=%d duration=%ds warmup=%ds "
+                + "requestsPerSecond=%.2f updateIntervalMillis=%d mix=%s",
+            sessions, symbols, symbolsPerRequest, ticksPerSecond, durationSeconds, warmupSeconds,
+            requestsPerSecond, updateIntervalMillis, System.getProperty("loadtest.mix", "default"));
+    }
+
+    /**
+     * 压测会话发出的请求类型
+     */
+    enum RequestKind {
+        SNAPSHOT,       // 一次性快照
+        SUBSCRIBE,      // 指定证券的增量订阅
+        UNSUBSCRIBE,    // 取消本会话的一个订阅，没有订阅时改为订阅
+        WILDCARD        // 全市场增量订阅
+    }
+}
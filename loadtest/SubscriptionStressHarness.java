@@ -0,0 +1,209 @@
+import quickfix.SessionID;
+import quickfix.field.MDEntryType;
+import quickfix.field.MDUpdateType;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订阅管理器并发压力测试：多个写线程以FIX回调的方式不断订阅、取消、替换订阅和整会话登出，
+ * 同时多个读线程模拟分发线程迭代分片索引、会话订阅列表和全部订阅快照，检查读到的每个快照都自洽：
+ * 无空元素、无重复、归属正确、版本号单调；结束后在静止状态下核对各视图完全一致
+ * 发现任何违例时以非0状态退出
+ *
+ * 用法：java -cp <classpath> -Dstress.durationSeconds=30 -Dstress.writers=4 -Dstress.readers=8 SubscriptionStressHarness
+ */
+public class SubscriptionStressHarness {
+    private static final List<Character> ENTRY_TYPES = Arrays.asList(MDEntryType.BID, MDEntryType.OFFER, MDEntryType.TRADE);
+
+    private final int durationSeconds = Integer.getInteger("stress.durationSeconds", 30);
+    private final int writers = Integer.getInteger("stress.writers", 4);
+    private final int readers = Integer.getInteger("stress.readers", 8);
+    private final int sessionsPerWriter = Integer.getInteger("stress.sessionsPerWriter", 250);
+    private final int symbols = Integer.getInteger("stress.symbols", 2000);
+    private final int symbolsPerSubscription = Integer.getInteger("stress.symbolsPerSubscription", 20);
+    private final int shards = Integer.getInteger("stress.shards", 4);
+
+    private final MarketDataSubscriptionManager manager = new MarketDataSubscriptionManager(shards);
+    // 每个写线程负责的会话，读线程从中随机选取
+    private final SessionID[][] sessions = new SessionID[writers][sessionsPerWriter];
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final AtomicLong violations = new AtomicLong();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws InterruptedException {
+        SubscriptionStressHarness harness = new SubscriptionStressHarness();
+        boolean passed = harness.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run() throws InterruptedException {
+        for (int writer = 0; writer < writers; writer++) {
+            for (int i = 0; i < sessionsPerWriter; i++) {
+                sessions[writer][i] = new SessionID("FIX.4.4", "MDS", "W" + writer + "C" + i);
+            }
+        }
+        System.out.println("Subscription stress: writers=" + writers + " readers=" + readers + " sessions="
+            + writers * sessionsPerWriter + " symbols=" + symbols + " shards=" + shards + " duration=" + durationSeconds + "s");
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            int writer = i;
+            threads.add(new Thread(() -> write(writer), "stress-writer-" + i));
+        }
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(this::read, "stress-reader-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long start = System.nanoTime();
+        for (int second = 1; second <= durationSeconds; second++) {
+            Thread.sleep(1000);
+            System.out.printf("t=%ds writes=%d reads=%d active=%d version=%d violations=%d%n", second, writes.sum(),
+                reads.sum(), manager.getAllActiveSubscriptions().size(), manager.getVersion(), violations.get());
+        }
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        verifyQuiescent();
+        System.out.printf("Writes: %.0f/s, reader passes: %.0f/s, violations: %d%n",
+            writes.sum() / seconds, reads.sum() / seconds, violations.get());
+        return violations.get() == 0;
+    }
+
+    /**
+     * 写线程：负责固定的一组会话（同一会话的请求只来自一个FIX回调线程），随机执行订阅、取消、替换和登出
+     */
+    private void write(int writer) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        SessionID[] owned = sessions[writer];
+        List<List<String>> activeReqIds = new ArrayList<>(sessionsPerWriter);
+        for (int i = 0; i < sessionsPerWriter; i++) {
+            activeReqIds.add(new ArrayList<>());
+        }
+        long sequence = 0;
+        while (running) {
+            int index = random.nextInt(sessionsPerWriter);
+            SessionID sessionId = owned[index];
+            List<String> reqIds = activeReqIds.get(index);
+            int roll = random.nextInt(100);
+            if (roll < 50 || reqIds.isEmpty()) {
+                String reqId = "W" + writer + "C" + index + "-R" + sequence++;
+                manager.addSubscription(reqId, newSubscription(reqId, sessionId, random));
+                reqIds.add(reqId);
+            } else if (roll < 90) {
+                manager.removeSubscription(reqIds.remove(random.nextInt(reqIds.size())));
+            } else if (roll < 98) {
+                // 相同MDReqID重新订阅，替换旧订阅
+                String reqId = reqIds.get(random.nextInt(reqIds.size()));
+                manager.addSubscription(reqId, newSubscription(reqId, sessionId, random));
+            } else {
+                manager.removeAllSubscriptions(sessionId);
+                reqIds.clear();
+            }
+            writes.increment();
+        }
+    }
+
+    private Subscription newSubscription(String reqId, SessionID sessionId, Random random) {
+        // 5%为全市场订阅
+        int count = random.nextInt(100) < 5 ? 0 : 1 + random.nextInt(symbolsPerSubscription);
+        int[] symbolIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            symbolIds[i] = random.nextInt(symbols);
+        }
+        return new Subscription(reqId, sessionId, symbolIds, ENTRY_TYPES, 0, MDUpdateType.INCREMENTAL_REFRESH, 1,
+            System.currentTimeMillis());
+    }
+
+    /**
+     * 读线程：按分发线程的方式迭代各视图，检查每次读到的快照
+     */
+    private void read() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long lastVersion = 0;
+        Set<Subscription> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (running) {
+            long version = manager.getVersion();
+            check(version >= lastVersion, "version went backwards: " + lastVersion + " -> " + version);
+            lastVersion = version;
+
+            int shard = random.nextInt(manager.getShardCount());
+            SubscriptionIndex index = manager.getShardIndex(shard);
+            int symbolId = random.nextInt(symbols);
+            seen.clear();
+            for (Subscription subscription : index.getSymbolSubscribers(symbolId)) {
+                check(subscription != null, "null in symbol subscribers");
+                check(seen.add(subscription), "duplicate in symbol subscribers of " + symbolId);
+                check(manager.shardOf(subscription.getSessionId()) == shard, "subscription indexed in wrong shard");
+                check(subscription.isSubscribedTo(symbolId),
+                    "subscription indexed under unsubscribed symbol " + symbolId);
+            }
+            seen.clear();
+            for (Subscription subscription : index.getWholeMarketSubscribers()) {
+                check(subscription != null && subscription.isWholeMarket(), "bad whole-market subscriber");
+                check(seen.add(subscription), "duplicate whole-market subscriber");
+            }
+
+            SessionID sessionId = sessions[random.nextInt(writers)][random.nextInt(sessionsPerWriter)];
+            seen.clear();
+            for (Subscription subscription : manager.getSubscriptionsForSession(sessionId)) {
+                check(subscription != null, "null in session subscriptions");
+                check(subscription.getSessionId().equals(sessionId), "subscription listed under wrong session");
+                check(seen.add(subscription), "duplicate in session subscriptions");
+            }
+
+            // 全部订阅快照开销较大，抽样检查
+            if (random.nextInt(64) == 0) {
+                seen.clear();
+                for (Subscription subscription : manager.getAllActiveSubscriptions()) {
+                    check(subscription != null, "null in active snapshot");
+                    check(seen.add(subscription), "duplicate in active snapshot");
+                }
+            }
+            reads.increment();
+        }
+    }
+
+    /**
+     * 写入全部停止后，核对订阅ID表、会话列表、全部订阅快照和分片索引完全一致
+     */
+    private void verifyQuiescent() {
+        List<Subscription> all = manager.getAllActiveSubscriptions();
+        check(manager.getAllActiveSubscriptions() == all, "snapshot rebuilt without a write");
+        Map<Subscription, Integer> expectedIndexEntries = new IdentityHashMap<>();
+        for (Subscription subscription : all) {
+            check(!subscription.isCancelled(), "cancelled subscription still active: " + subscription.getReqId());
+            check(manager.getSubscription(subscription.getReqId()) == subscription,
+                "id lookup disagrees for " + subscription.getReqId());
+            check(manager.getSubscriptionsForSession(subscription.getSessionId()).contains(subscription),
+                "session list misses " + subscription.getReqId());
+            expectedIndexEntries.put(subscription, subscription.isWholeMarket() ? 1 : subscription.getSymbolCount());
+        }
+        Map<Subscription, Integer> indexEntries = new IdentityHashMap<>();
+        for (int shard = 0; shard < manager.getShardCount(); shard++) {
+            SubscriptionIndex index = manager.getShardIndex(shard);
+            for (int symbolId = 0; symbolId < symbols; symbolId++) {
+                for (Subscription subscription : index.getSymbolSubscribers(symbolId)) {
+                    indexEntries.merge(subscription, 1, Integer::sum);
+                }
+            }
+            for (Subscription subscription : index.getWholeMarketSubscribers()) {
+                indexEntries.merge(subscription, 1, Integer::sum);
+            }
+        }
+        check(indexEntries.equals(expectedIndexEntries), "index holds " + indexEntries.size()
+            + " subscriptions, expected " + expectedIndexEntries.size());
+        System.out.println("Quiescent check: " + all.size() + " active subscriptions, version " + manager.getVersion());
+    }
+
+    private void check(boolean condition, String message) {
+        if (!condition && violations.incrementAndGet() <= 20) {
+            System.err.println("VIOLATION: " + message);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import quickfix.field.MDEntryType;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测行情源：作为推送式行情源接入MarketDataIngestor，按固定速率写入其环形缓冲区，
+ * 行情经接入线程写入缓存，与生产行情源走同一路径
+ * 每条行情的数量字段携带其发布序号，接收端据此查到发布时刻，得到纳秒精度的行情到达延迟
+ * 初始行情在接入时(start)写入，之后由发布线程(run)写入，同一时刻只有一个线程写入环形缓冲区
+ */
+final class TickPublisher implements MarketDataFeed, Runnable {
+    private static final char[] ENTRY_TYPES = {MDEntryType.BID, MDEntryType.OFFER, MDEntryType.TRADE};
+    private static final int HISTORY = 1 << 20;     // 保留最近的发布时刻数，更早的行情不再统计延迟
+
+    private final LoadTestConfig config;
+    private volatile MarketDataSink sink;
+    private final AtomicLongArray publishNanos = new AtomicLongArray(HISTORY);
+    private final AtomicLong published = new AtomicLong();
+    private volatile boolean running = true;
+
+    TickPublisher(LoadTestConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return "loadtest";
+    }
+
+    /**
+     * 接入时为每个证券的每种数据类型写入一条初始行情，保证快照请求有数据
+     */
+    @Override
+    public void start(MarketDataSink sink) {
+        this.sink = sink;
+        seed();
+    }
+
+    private void seed() {
+        for (int i = 0; i < config.symbols; i++) {
+            for (char type : ENTRY_TYPES) {
+                sink.onMarketData(LoadTestConfig.symbol(i), type, 100.0, 0, System.currentTimeMillis());
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        Random random = new Random(7);
+        long intervalNanos = 1_000_000_000L / Math.max(1, config.ticksPerSecond);
+        long start = System.nanoTime();
+        long sequence = 0;
+        while (running) {
+            long due = start + sequence * intervalNanos;
+            long now = System.nanoTime();
+            if (now < due) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            sequence++;
+            int symbol = random.nextInt(config.symbols);
+            char type = ENTRY_TYPES[(int) (sequence % ENTRY_TYPES.length)];
+            double price = 100 + random.nextInt(10_000) / 100.0;
+            publishNanos.set((int) (sequence & (HISTORY - 1)), System.nanoTime());
+            published.set(sequence);
+            sink.onMarketData(LoadTestConfig.symbol(symbol), type, price, sequence, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 数量字段对应行情的发布时刻，初始行情或已超出保留范围时返回-1
+     */
+    long publishNanosOf(double size) {
+        long sequence = (long) size;
+        long latest = published.get();
+        if (sequence <= 0 || sequence != size || sequence > latest || latest - sequence >= HISTORY) {
+            return -1;
+        }
+        return publishNanos.get((int) (sequence & (HISTORY - 1)));
+    }
+
+    long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * 停止发布，发布线程在当前这条行情写完后退出
+     */
+    @Override
+    public void stop() {
+        running = false;
+    }
+}